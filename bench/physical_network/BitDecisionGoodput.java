@@ -0,0 +1,113 @@
+package physical_network;
+
+import java.io.PrintStream;
+
+/**
+ * Measures goodput between two network cards on a wire with bursts of
+ * noise, for receivers deciding each symbol from one sample in the middle of
+ * the pulse or from several samples across it, by majority vote or by their
+ * mean.
+ * <p>
+ * Noise follows the Gilbert-Elliott model: quiet background noise with short
+ * bursts, which are swept through several levels. Bursts are much shorter
+ * than a pulse, so a single sample is either hit or not while most of a
+ * pulse's samples miss them. Cards use synchronous framing with COBS.
+ * <p>
+ * Runs in simulated time on a VirtualClock with a fixed noise seed, so results
+ * are repeatable.
+ * <p>
+ * Usage: BitDecisionGoodput [simulated seconds] [payload size] [burst levels ...]
+ */
+public class BitDecisionGoodput {
+
+	// Background noise level, and chances per sample of a burst starting and ending.
+	private static final double NOISE_LEVEL = 0.5;
+	private static final double GOOD_TO_BAD = 0.001;
+	private static final double BAD_TO_GOOD = 0.25;
+
+	private static final int WINDOW_SIZE = 4;
+
+	// Receivers compared, and the samples each takes per pulse.
+	private static final BitDecision[] DECISIONS = {
+			BitDecision.MID_PULSE, BitDecision.MAJORITY, BitDecision.MAJORITY, BitDecision.INTEGRATE};
+	private static final int[] SAMPLES = {1, 5, 9, 9};
+
+	public static void main(String[] args) throws Exception {
+		long duration = (args.length > 0 ? Long.parseLong(args[0]) : 14400) * 1000;
+		int payloadSize = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		double[] burstLevels = {0, 8, 12, 16, 24};
+		if (args.length > 2) {
+			burstLevels = new double[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				burstLevels[i - 2] = Double.parseDouble(args[i]);
+		}
+
+		PrintStream out = System.out;
+		out.printf("%8s %14s %10s %10s %10s %10s %10s%n", "burst V", "decision", "delivered", "bytes/s",
+				"sent", "retrans", "bad check");
+		for (double burstLevel : burstLevels) {
+			for (int i = 0; i < DECISIONS.length; i++) {
+				long[] result = run(DECISIONS[i], SAMPLES[i], burstLevel, duration, payloadSize);
+				out.printf("%8.1f %14s %10d %10.2f %10d %10d %10d%n", burstLevel, DECISIONS[i] + " x" + SAMPLES[i],
+						result[0], result[0] * payloadSize * 1000.0 / duration, result[1], result[2], result[3]);
+			}
+		}
+
+		// Cards run until the JVM exits.
+		System.exit(0);
+	}
+
+	/*
+	 * Frames delivered, frames sent, retransmissions and frames failing their
+	 * integrity check in the simulated duration.
+	 */
+	private static long[] run(BitDecision decision, int samples, double burstLevel, long duration, int payloadSize)
+			throws InterruptedException {
+		VirtualClock clock = new VirtualClock();
+		TwistedWirePair wire = new MyTwistedWirePair();
+
+		NetworkCard sender = new NetworkCard(1, wire, clock);
+		NetworkCard receiver = new NetworkCard(2, wire, clock);
+		for (NetworkCard card : new NetworkCard[] {sender, receiver}) {
+			card.setArq(ArqMode.SELECTIVE_REPEAT, WINDOW_SIZE);
+			card.setFraming(Framing.COBS);
+			card.setSynchronous(true);
+			card.setBitDecision(decision, samples);
+			card.init();
+		}
+
+		ThermalNoise noise = new ThermalNoise("Noise", NOISE_LEVEL, wire, clock);
+		noise.setModel(NoiseModel.GILBERT_ELLIOTT);
+		noise.setBursts(GOOD_TO_BAD, BAD_TO_GOOD, burstLevel);
+		noise.setSeed(1);
+		noise.setDaemon(true);
+		clock.start(noise);
+
+		// A frame per second is more than can be sent, so the sender is never idle.
+		byte[] payload = new byte[payloadSize];
+		for (int i = 0; i < payloadSize; i++)
+			payload[i] = (byte) (i * 37);
+		for (long i = duration / 1000; i > 0; i--)
+			sender.sendAsync(new DataFrame(payload, 2));
+
+		Thread reader = new Thread(() -> {
+			try {
+				clock.attach();
+				while (true)
+					receiver.receive().release();
+			} catch (InterruptedException except) {
+			} finally {
+				clock.detach();
+			}
+		});
+		reader.setDaemon(true);
+		clock.start(reader);
+
+		clock.sleep(duration);
+
+		CardMetrics sent = sender.getMetrics();
+		CardMetrics received = receiver.getMetrics();
+		return new long[] {received.getFramesDelivered(), sent.getFramesSent(), sent.getRetransmissions(),
+				received.getChecksumFailures()};
+	}
+}
@@ -0,0 +1,124 @@
+package physical_network;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Measures aggregate throughput with many network cards sharing one wire.
+ * Cards are paired up and each pair's first card sends the same number of
+ * frames to its second, all starting at once, so the cards contend for the
+ * wire through carrier sense, collision detection and backoff.
+ * <p>
+ * Frames are sent with sendAsync() and counted off by their receipts. A
+ * saturated wire can make cards give up on frames, which are reported as
+ * lost, and a run stops after a simulated time limit with any frames still
+ * unacknowledged counted as lost too.
+ * <p>
+ * Runs in simulated time on a VirtualClock, so results are repeatable.
+ * <p>
+ * Usage: BusThroughput [frames per sender] [payload size] [card counts ...]
+ */
+public class BusThroughput {
+
+	// Simulated time a run may take before the frames still in flight are counted as lost.
+	private static final long TIME_LIMIT = 4 * 3600 * 1000;
+
+	// Simulated time between checks on whether every frame has been dealt with.
+	private static final long POLL_INTERVAL = 1000;
+
+	public static void main(String[] args) throws InterruptedException {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int payloadSize = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int[] cardCounts = {2, 8, 16, 32, 64};
+		if (args.length > 2) {
+			cardCounts = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				cardCounts[i - 2] = Integer.parseInt(args[i]);
+		}
+
+		PrintStream out = System.out;
+		out.printf("%8s %12s %8s %12s %16s %12s%n", "cards", "delivered", "lost", "sim seconds", "payload bytes/s",
+				"wall ms");
+		for (int cards : cardCounts) {
+			long start = System.currentTimeMillis();
+			long[] result = run(cards, frames, payloadSize);
+
+			double seconds = result[2] / 1000.0;
+			out.printf("%8d %12d %8d %12.1f %16.2f %12d%n", cards, result[0], result[1], seconds,
+					result[0] * payloadSize / seconds, System.currentTimeMillis() - start);
+		}
+
+		// Cards run until the JVM exits.
+		System.exit(0);
+	}
+
+	/*
+	 * Frames delivered, frames lost and simulated time in milliseconds until
+	 * the last frame was acknowledged or given up on.
+	 */
+	private static long[] run(int cards, int frames, int payloadSize) throws InterruptedException {
+		VirtualClock clock = new VirtualClock();
+		TwistedWirePair wire = new MyTwistedWirePair();
+
+		NetworkCard[] card = new NetworkCard[cards];
+		for (int i = 0; i < cards; i++) {
+			card[i] = new NetworkCard(i + 1, wire, clock);
+			card[i].init();
+		}
+
+		byte[] payload = new byte[payloadSize];
+		for (int i = 0; i < payloadSize; i++)
+			payload[i] = (byte) ('a' + i % 26);
+
+		for (int i = 1; i < cards; i += 2)
+			card[i].receivePublisher().subscribe(new Discard());
+
+		List<CompletableFuture<DeliveryReceipt>> receipts = new ArrayList<CompletableFuture<DeliveryReceipt>>();
+		for (int i = 0; i + 1 < cards; i += 2) {
+			for (int frame = 0; frame < frames; frame++)
+				receipts.add(card[i].sendAsync(new DataFrame(payload, i + 2)));
+		}
+
+		CompletableFuture<Void> all = CompletableFuture.allOf(receipts.toArray(new CompletableFuture<?>[0]));
+		while (!all.isDone() && clock.now() < TIME_LIMIT)
+			clock.sleep(POLL_INTERVAL);
+
+		long delivered = 0;
+		long finished = 0;
+		for (CompletableFuture<DeliveryReceipt> receipt : receipts) {
+			DeliveryReceipt done = receipt.getNow(null);
+			if (done == null) {
+				finished = TIME_LIMIT;
+				continue;
+			}
+			if (done.isDelivered())
+				delivered++;
+			finished = Math.max(finished, done.getCompletedTime());
+		}
+		return new long[] {delivered, receipts.size() - delivered, finished};
+	}
+
+	/*
+	 * Takes every frame a card receives and releases it.
+	 */
+	private static class Discard implements Flow.Subscriber<DataFrame> {
+
+		public void onSubscribe(Flow.Subscription subscription) {
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		public void onNext(DataFrame frame) {
+			frame.release();
+		}
+
+		public void onError(Throwable error) {
+			error.printStackTrace();
+		}
+
+		public void onComplete() {
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package physical_network;
+
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how many network cards one process can simulate. Cards are paired
+ * up, each pair on its own wire, and all pairs share one VirtualClock which
+ * schedules their threads. Every sender sends the same number of frames and
+ * the wall clock time to deliver them all is reported with the memory used.
+ * <p>
+ * Each card runs two virtual threads, so a run needs only a few operating system
+ * threads however many cards there are. Senders are fed by a virtual thread
+ * each, or with "async" all frames are queued by one thread with sendAsync()
+ * and received through each card's publisher, with no extra threads.
+ * <p>
+ * Usage: CardScaling [cards] [frames per sender] [async]
+ */
+public class CardScaling {
+
+	// Number of device numbers, which are sent in one byte.
+	private static final int DEVICES = 256;
+
+	public static void main(String[] args) throws InterruptedException {
+		int cards = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		boolean async = args.length > 2 && args[2].equals("async");
+
+		PrintStream out = System.out;
+		long start = System.currentTimeMillis();
+
+		VirtualClock clock = new VirtualClock();
+		NetworkCard[] card = new NetworkCard[cards];
+		for (int i = 0; i + 1 < cards; i += 2) {
+			// Each pair has a wire of its own, so pairs can reuse device numbers
+			// once there are more cards than numbers.
+			TwistedWirePair wire = new MyTwistedWirePair(2);
+			card[i] = new NetworkCard(i % DEVICES, wire, clock);
+			card[i + 1] = new NetworkCard((i + 1) % DEVICES, wire, clock);
+			card[i].init();
+			card[i + 1].init();
+		}
+		long started = System.currentTimeMillis();
+
+		if (async)
+			runAsync(clock, card, frames);
+		else
+			runThreads(clock, card, frames);
+		long finished = System.currentTimeMillis();
+
+		Runtime runtime = Runtime.getRuntime();
+		out.printf("%-24s %d%n", "cards", cards / 2 * 2);
+		out.printf("%-24s %d%n", "platform threads", Thread.activeCount());
+		out.printf("%-24s %d%n", "frames delivered", cards / 2 * frames);
+		out.printf("%-24s %.1f%n", "simulated seconds", clock.now() / 1000.0);
+		out.printf("%-24s %d%n", "start up ms", started - start);
+		out.printf("%-24s %d%n", "run ms", finished - started);
+		out.printf("%-24s %d%n", "heap used MB", (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+
+		// Cards run until the JVM exits.
+		System.exit(0);
+	}
+
+	private static void runThreads(VirtualClock clock, NetworkCard[] card, int frames) throws InterruptedException {
+		// Each sender is fed by its own thread, as output queues only hold a few frames.
+		for (int i = 0; i + 1 < card.length; i += 2) {
+			NetworkCard sender = card[i];
+			int receiver = (i + 1) % DEVICES;
+			clock.start(Thread.ofVirtual().unstarted(() -> {
+				try {
+					clock.attach();
+					for (int frame = 0; frame < frames; frame++)
+						sender.send(new DataFrame("frame" + frame, receiver));
+				} catch (InterruptedException except) {
+				} finally {
+					clock.detach();
+				}
+			}));
+		}
+
+		for (int frame = 0; frame < frames; frame++) {
+			for (int i = 1; i < card.length; i += 2)
+				card[i].receive().release();
+		}
+	}
+
+	/*
+	 * Queues every frame without waiting and counts frames off as receivers
+	 * are given them, one at a time, by their publishers.
+	 */
+	private static void runAsync(VirtualClock clock, NetworkCard[] card, int frames) throws InterruptedException {
+		CountDownLatch received = new CountDownLatch(card.length / 2 * frames);
+		LongAdder failed = new LongAdder();
+
+		for (int i = 1; i < card.length; i += 2) {
+			card[i].receivePublisher().subscribe(new Flow.Subscriber<DataFrame>() {
+				private Flow.Subscription subscription;
+
+				public void onSubscribe(Flow.Subscription subscription) {
+					this.subscription = subscription;
+					subscription.request(1);
+				}
+
+				public void onNext(DataFrame frame) {
+					frame.release();
+					received.countDown();
+					subscription.request(1);
+				}
+
+				public void onError(Throwable error) {
+					error.printStackTrace();
+				}
+
+				public void onComplete() {
+				}
+			});
+		}
+
+		for (int i = 0; i + 1 < card.length; i += 2) {
+			for (int frame = 0; frame < frames; frame++) {
+				card[i].sendAsync(new DataFrame("frame" + frame, (i + 1) % DEVICES)).thenAccept(receipt -> {
+					if (!receipt.isDelivered())
+						failed.increment();
+				});
+			}
+		}
+
+		// Lets the cards run, as this thread waits outside the simulation.
+		clock.detach();
+		received.await();
+		if (failed.sum() > 0)
+			System.out.println(failed.sum() + " frames not delivered");
+	}
+}
@@ -0,0 +1,148 @@
+package physical_network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the frame encoding and decoding path, without any wire timing.
+ * <p>
+ * Covers building a frame's header and transmitted bytes, the checksum, byte
+ * stuffing or COBS encoding as done by the transmitter and decoding and header
+ * checking as done by the receiver. Payloads are plain text, random binary
+ * data or the worst case for byte stuffing where every byte is a flag or escape.
+ * <p>
+ * The transmit and receive paths are measured both as the network card runs
+ * them, on its own buffers and pooled frames, and through the copying public
+ * API. Run with "-prof gc" to see the allocation rate of each path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramingBenchmark {
+
+	@Param({"1", "64", "512", "1500"})
+	public int payloadSize;
+
+	@Param({"text", "binary", "flags"})
+	public String payloadType;
+
+	@Param({"BYTE_STUFFING", "COBS"})
+	public Framing framing;
+
+	private DataFrame frame;
+	private byte[] frameBytes;
+	private byte[] stuffed;
+	private int stuffedLength;
+	private byte[] stuffBuffer;
+	private byte[] unstuffBuffer;
+
+	@Setup
+	public void setUp() {
+		byte[] payload = new byte[payloadSize];
+		if (payloadType.equals("flags")) {
+			for (int i = 0; i < payload.length; i++)
+				payload[i] = (i % 2 == 0) ? ByteStuffing.FLAG : ByteStuffing.ESCAPE;
+		} else if (payloadType.equals("binary")) {
+			new Random(1).nextBytes(payload);
+		} else {
+			Random random = new Random(1);
+			for (int i = 0; i < payload.length; i++)
+				payload[i] = (byte) ('a' + random.nextInt(26));
+		}
+
+		frame = new DataFrame(payload, 2);
+		frame.setSource(1);
+		frame.setHeader(1);
+		frameBytes = frame.getTransmittedBytes();
+
+		stuffBuffer = new byte[Framing.maxEncodedLength(frameBytes.length)];
+		stuffed = new byte[stuffBuffer.length];
+		stuffedLength = framing.encode(frameBytes, frameBytes.length, stuffed);
+		unstuffBuffer = new byte[frameBytes.length];
+	}
+
+	@Benchmark
+	public byte[] transmittedBytes() {
+		return frame.getTransmittedBytes();
+	}
+
+	@Benchmark
+	public long checksum() {
+		return IntegrityCheck.SUM.compute(frameBytes, frameBytes.length);
+	}
+
+	@Benchmark
+	public ByteBuffer makeHeader() {
+		frame.setHeader(1);
+		return frame.getHeaderBuffer();
+	}
+
+	@Benchmark
+	public boolean checkHeader() {
+		return frame.checkHeader(2);
+	}
+
+	@Benchmark
+	public int encode() {
+		return framing.encode(frameBytes, frameBytes.length, stuffBuffer);
+	}
+
+	@Benchmark
+	public int decode() {
+		return framing.decode(stuffed, stuffedLength, unstuffBuffer);
+	}
+
+	/*
+	 * Everything the transmitter does to a frame before putting bits on the wire.
+	 */
+	@Benchmark
+	public int transmitPath() {
+		frame.setHeader(1);
+		return framing.encode(frame.getFrameArray(), frame.getLength(), stuffBuffer);
+	}
+
+	@Benchmark
+	public int transmitPathCopying() {
+		frame.setHeader(1);
+		byte[] bytes = frame.getTransmittedBytes();
+		byte[] payload = new byte[Framing.maxEncodedLength(bytes.length)];
+		return framing.encode(bytes, bytes.length, payload);
+	}
+
+	/*
+	 * Everything the receiver does to the bytes of a frame taken off the wire.
+	 */
+	@Benchmark
+	public boolean receivePath() {
+		DataFrame received = DataFrame.acquire();
+		received.setLength(framing.decode(stuffed, stuffedLength, received.getFrameArray()));
+		boolean valid = received.checkHeader(2);
+		received.release();
+		return valid;
+	}
+
+	@Benchmark
+	public boolean receivePathCopying() {
+		byte[] bytePayload = new byte[frameBytes.length];
+		int length = framing.decode(stuffed, stuffedLength, bytePayload);
+		DataFrame received = new DataFrame(Arrays.copyOfRange(bytePayload, 0, length));
+		return received.checkHeader(2);
+	}
+}
@@ -0,0 +1,67 @@
+package physical_network;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Prints how many bytes each framing puts on the wire for a frame, for
+ * plain text, random binary data and payloads made only of flag and
+ * escape bytes (the worst case for byte stuffing) or only of zeros.
+ * <p>
+ * Usage: FramingOverhead [payload sizes ...]
+ */
+public class FramingOverhead {
+
+	public static void main(String[] args) {
+		int[] sizes = {1, 64, 512, 1500};
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.printf("%-8s %8s", "payload", "size");
+		for (Framing framing : Framing.values())
+			System.out.printf(" %14s", framing);
+		System.out.println();
+
+		for (String type : new String[]{"text", "binary", "flags", "zeros"}) {
+			for (int size : sizes) {
+				DataFrame frame = new DataFrame(payload(type, size), 2);
+				frame.setSource(1);
+				frame.setHeader(1);
+				byte[] bytes = frame.getTransmittedBytes();
+				byte[] out = new byte[Framing.maxEncodedLength(bytes.length)];
+
+				System.out.printf("%-8s %8d", type, size);
+				for (Framing framing : Framing.values()) {
+					// Frame contents plus the terminating flag.
+					int sent = framing.encode(bytes, bytes.length, out) + 1;
+					System.out.printf(" %8d %+4.0f%%", sent, 100.0 * (sent - bytes.length) / bytes.length);
+				}
+				System.out.println();
+			}
+		}
+	}
+
+	private static byte[] payload(String type, int size) {
+		byte[] payload = new byte[size];
+		Random random = new Random(1);
+		switch (type) {
+			case "text":
+				for (int i = 0; i < size; i++)
+					payload[i] = (byte) ('a' + random.nextInt(26));
+				break;
+			case "binary":
+				random.nextBytes(payload);
+				break;
+			case "flags":
+				for (int i = 0; i < size; i++)
+					payload[i] = (i % 2 == 0) ? ByteStuffing.FLAG : ByteStuffing.ESCAPE;
+				break;
+			default:
+				Arrays.fill(payload, (byte) 0);
+		}
+		return payload;
+	}
+}
@@ -0,0 +1,56 @@
+package physical_network;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the cost of each integrity check on a frame, both
+ * computing the check value as a transmitter does and verifying it as a
+ * receiver does. IntegrityErrorRate measures how many corrupted frames
+ * each check lets through.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntegrityCheckBenchmark {
+
+	@Param({"1", "64", "512", "1500"})
+	public int payloadSize;
+
+	@Param({"SUM", "INTERNET", "CRC32C"})
+	public IntegrityCheck integrityCheck;
+
+	private byte[] frame;
+
+	@Setup
+	public void setUp() {
+		frame = new byte[integrityCheck.payloadIndex() + payloadSize];
+		new Random(1).nextBytes(frame);
+		integrityCheck.write(frame, frame.length);
+	}
+
+	@Benchmark
+	public long compute() {
+		return integrityCheck.compute(frame, frame.length);
+	}
+
+	@Benchmark
+	public boolean verify() {
+		return integrityCheck.verify(frame, frame.length);
+	}
+}
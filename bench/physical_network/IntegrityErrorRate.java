@@ -0,0 +1,96 @@
+package physical_network;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Measures the residual error rate of each integrity check: the fraction of
+ * corrupted frames whose check value still verifies. Frames are corrupted
+ * with bursts of bit errors, as burst noise on the wire causes, with
+ * scattered single bit errors and with two bytes swapped.
+ * <p>
+ * Usage: IntegrityErrorRate [trials per error pattern] [payload size]
+ */
+public class IntegrityErrorRate {
+
+	private static final int[] BURST_LENGTHS = {8, 16, 24, 32, 48};
+	private static final int[] BIT_ERRORS = {2, 3, 4, 8};
+
+	public static void main(String[] args) {
+		int trials = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int payloadSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+		System.out.printf("%-16s", "errors");
+		for (IntegrityCheck check : IntegrityCheck.values())
+			System.out.printf(" %14s", check);
+		System.out.println();
+
+		for (int burst : BURST_LENGTHS)
+			row(burst + " bit burst", trials, payloadSize, (frame, random) -> burst(frame, burst, random));
+		for (int bits : BIT_ERRORS)
+			row(bits + " bit errors", trials, payloadSize, (frame, random) -> bitErrors(frame, bits, random));
+		row("byte swap", trials, payloadSize, IntegrityErrorRate::swap);
+	}
+
+	private interface Corruption {
+		void apply(byte[] frame, SplittableRandom random);
+	}
+
+	private static void row(String name, int trials, int payloadSize, Corruption corruption) {
+		System.out.printf("%-16s", name);
+		for (IntegrityCheck check : IntegrityCheck.values())
+			System.out.printf(" %14.3e", (double) undetected(check, trials, payloadSize, corruption) / trials);
+		System.out.println();
+	}
+
+	/*
+	 * Number of corrupted frames which pass the check.
+	 */
+	private static int undetected(IntegrityCheck check, int trials, int payloadSize, Corruption corruption) {
+		SplittableRandom random = new SplittableRandom(1);
+		byte[] original = new byte[check.payloadIndex() + payloadSize];
+		byte[] frame = new byte[original.length];
+		int undetected = 0;
+
+		for (int trial = 0; trial < trials; trial++) {
+			for (int i = 0; i < original.length; i++)
+				original[i] = (byte) random.nextInt(256);
+			check.write(original, original.length);
+
+			System.arraycopy(original, 0, frame, 0, frame.length);
+			corruption.apply(frame, random);
+
+			if (!Arrays.equals(frame, original) && check.verify(frame, frame.length))
+				undetected++;
+		}
+		return undetected;
+	}
+
+	/*
+	 * Flips the first and last bit of a burst and a random pattern in between.
+	 */
+	private static void burst(byte[] frame, int length, SplittableRandom random) {
+		int start = random.nextInt(frame.length * 8 - length + 1);
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || i == length - 1 || random.nextBoolean())
+				flip(frame, start + i);
+		}
+	}
+
+	private static void bitErrors(byte[] frame, int count, SplittableRandom random) {
+		for (int i = 0; i < count; i++)
+			flip(frame, random.nextInt(frame.length * 8));
+	}
+
+	private static void swap(byte[] frame, SplittableRandom random) {
+		int i = random.nextInt(frame.length);
+		int j = random.nextInt(frame.length);
+		byte value = frame[i];
+		frame[i] = frame[j];
+		frame[j] = value;
+	}
+
+	private static void flip(byte[] frame, int bit) {
+		frame[bit / 8] ^= (byte) (0x80 >>> (bit % 8));
+	}
+}
@@ -0,0 +1,25 @@
+package physical_network;
+
+import java.util.HashMap;
+
+/**
+ * The original wire implementation which takes a lock and re-sums every
+ * device's voltage on each update. Kept as a baseline for benchmarks.
+ */
+class LockingTwistedWirePair implements TwistedWirePair {
+
+	private double voltage = 0.0;
+	private HashMap<String, Double> currentVoltages = new HashMap<String, Double>();
+
+	public synchronized void setVoltage(String device, double voltage) {
+		currentVoltages.put(device, voltage);
+
+		this.voltage = 0.0;
+		for (double currentVoltage : currentVoltages.values())
+			this.voltage += currentVoltage;
+	}
+
+	public synchronized double getVoltage(String device) {
+		return voltage;
+	}
+}
@@ -0,0 +1,147 @@
+package physical_network;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures aggregate throughput and delivery latency across wire segments
+ * joined by a bridge, as the number of segments grows.
+ * <p>
+ * Segments are joined in a star by one bridge and taken in twos, with a
+ * sender on the first and its receiver on the second, so every frame crosses
+ * the bridge. Each sender sends the same number of frames. One segment is the
+ * plain two card link, with no bridge, for comparison (and with an odd number
+ * the last pair share a segment). Each run is made with the bridge storing and
+ * forwarding frames and with it cutting them through. Latency runs from a
+ * frame being handed to send() to it being received, so it includes the time
+ * frames queue behind each other at the sender. Each pair exchanges a frame
+ * before timing starts, so that the bridge has learnt where every host is.
+ * <p>
+ * Runs in simulated time on a VirtualClock, so results are repeatable.
+ * <p>
+ * Usage: PlantThroughput [frames per sender] [payload size] [segment counts ...]
+ */
+public class PlantThroughput {
+
+	// Frames cross the bridge and back before they are acknowledged, which takes
+	// longer than the cards' default retransmission timeout allows for.
+	private static final int INITIAL_TIMEOUT = 120000;
+
+	// Window wide enough that senders are not held up waiting for acknowledgements.
+	private static final int WINDOW_SIZE = 8;
+
+	public static void main(String[] args) throws InterruptedException {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int payloadSize = Math.max(Long.BYTES, args.length > 1 ? Integer.parseInt(args[1]) : 8);
+		int[] segmentCounts = {1, 2, 4, 8, 16, 32};
+		if (args.length > 2) {
+			segmentCounts = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				segmentCounts[i - 2] = Integer.parseInt(args[i]);
+		}
+
+		PrintStream out = System.out;
+		out.printf("%-18s %8s %8s %12s %16s %14s %10s%n", "mode", "segments", "frames", "sim seconds",
+				"payload bytes/s", "mean latency s", "wall ms");
+		for (ForwardingMode mode : ForwardingMode.values()) {
+			for (int segments : segmentCounts) {
+				long start = System.currentTimeMillis();
+				long[] result = run(mode, segments, frames, payloadSize);
+
+				int delivered = (segments + 1) / 2 * frames;
+				double seconds = result[0] / 1000.0;
+				out.printf("%-18s %8d %8d %12.1f %16.2f %14.1f %10d%n", mode, segments, delivered, seconds,
+						delivered * payloadSize / seconds, result[1] / 1000.0 / delivered,
+						System.currentTimeMillis() - start);
+			}
+		}
+
+		// Cards run until the JVM exits.
+		System.exit(0);
+	}
+
+	/*
+	 * Simulated time in milliseconds from the senders starting until every
+	 * frame has been delivered, and the total of their delivery latencies.
+	 */
+	private static long[] run(ForwardingMode mode, int segments, int frames, int payloadSize) throws InterruptedException {
+		VirtualClock clock = new VirtualClock();
+		Topology topology = new Topology(clock);
+
+		// Device numbers fit in a byte and are unique across the topology.
+		if (segments > 254)
+			throw new IllegalArgumentException("At most 254 segments");
+
+		TwistedWirePair[] wire = new TwistedWirePair[segments];
+		for (int i = 0; i < segments; i++)
+			wire[i] = topology.addSegment();
+
+		int pairs = (segments + 1) / 2;
+		NetworkCard[] sender = new NetworkCard[pairs];
+		NetworkCard[] receiver = new NetworkCard[pairs];
+		for (int i = 0; i < pairs; i++) {
+			sender[i] = topology.addHost(2 * i + 1, wire[2 * i]);
+			receiver[i] = topology.addHost(2 * i + 2, wire[Math.min(2 * i + 1, segments - 1)]);
+			for (NetworkCard host : new NetworkCard[] {sender[i], receiver[i]}) {
+				host.setArq(ArqMode.GO_BACK_N, WINDOW_SIZE);
+				host.setInitialTimeout(INITIAL_TIMEOUT);
+			}
+		}
+		if (segments > 1)
+			topology.addBridge(mode, wire);
+		topology.init();
+
+		// Each sender first sends its receiver a frame, one pair at a time, so the bridge
+		// learns where every host is (receivers from their acknowledgements) without
+		// flooding the frames timed, or many frames at once.
+		for (int i = 0; i < pairs; i++) {
+			sender[i].send(new DataFrame(new byte[payloadSize], 2 * i + 2));
+			receiver[i].receive().release();
+		}
+		long start = clock.now();
+
+		AtomicLong delivered = new AtomicLong();
+		AtomicLong latency = new AtomicLong();
+
+		for (int i = 0; i < pairs; i++) {
+			NetworkCard from = sender[i];
+			NetworkCard to = receiver[i];
+			int destination = 2 * i + 2;
+
+			// Each sender is fed by its own thread, as output queues only hold a few frames.
+			clock.start(new Thread(() -> {
+				try {
+					clock.attach();
+					for (int frame = 0; frame < frames; frame++) {
+						byte[] payload = new byte[payloadSize];
+						ByteBuffer.wrap(payload).putLong(clock.now());
+						from.send(new DataFrame(payload, destination));
+					}
+				} catch (InterruptedException except) {
+				} finally {
+					clock.detach();
+				}
+			}));
+
+			clock.start(new Thread(() -> {
+				try {
+					clock.attach();
+					for (int frame = 0; frame < frames; frame++) {
+						DataFrame received = to.receive();
+						latency.addAndGet(clock.now() - received.getPayloadBuffer().getLong());
+						received.release();
+						delivered.incrementAndGet();
+						clock.signal();
+					}
+				} catch (InterruptedException except) {
+				} finally {
+					clock.detach();
+				}
+			}));
+		}
+
+		clock.waitFor(() -> delivered.get() == (long) pairs * frames, 0);
+		return new long[] {clock.now() - start, latency.get()};
+	}
+}
@@ -0,0 +1,111 @@
+package physical_network;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Measures throughput of a stream sent between two network cards through
+ * their channels, which split it into frames and put it back together, for
+ * several segment sizes. The stream is written and read in chunks which do
+ * not line up with the segments, and the bytes read are checked against
+ * those written.
+ * <p>
+ * Runs in simulated time on a VirtualClock, so results are repeatable.
+ * <p>
+ * Usage: StreamTransfer [stream length] [window size] [segment sizes ...]
+ */
+public class StreamTransfer {
+
+	// Sizes of the writes made to the sending channel and of the buffer read into.
+	private static final int WRITE_SIZE = 1000;
+	private static final int READ_SIZE = 333;
+
+	public static void main(String[] args) throws Exception {
+		int length = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		int windowSize = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int[] segmentSizes = {64, 256, 1500};
+		if (args.length > 2) {
+			segmentSizes = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				segmentSizes[i - 2] = Integer.parseInt(args[i]);
+		}
+
+		PrintStream out = System.out;
+		out.printf("%10s %10s %12s %12s %12s%n", "segment", "frames", "sim seconds", "bytes/s", "wall ms");
+		for (int segmentSize : segmentSizes) {
+			long start = System.currentTimeMillis();
+			double seconds = run(length, windowSize, segmentSize) / 1000.0;
+
+			int frames = length / segmentSize + 1;
+			out.printf("%10d %10d %12.1f %12.2f %12d%n", segmentSize, frames, seconds,
+					length / seconds, System.currentTimeMillis() - start);
+		}
+
+		// Cards run until the JVM exits.
+		System.exit(0);
+	}
+
+	/*
+	 * Simulated time in milliseconds until the whole stream has been read.
+	 */
+	private static long run(int length, int windowSize, int segmentSize) throws Exception {
+		VirtualClock clock = new VirtualClock();
+		TwistedWirePair wire = new MyTwistedWirePair();
+
+		NetworkCard sender = new NetworkCard(1, wire, clock);
+		NetworkCard receiver = new NetworkCard(2, wire, clock);
+		for (NetworkCard card : new NetworkCard[] {sender, receiver}) {
+			card.setArq(ArqMode.SELECTIVE_REPEAT, windowSize);
+			card.setFraming(Framing.COBS);
+			card.init();
+		}
+
+		clock.start(new Thread(() -> {
+			try {
+				clock.attach();
+				SegmentingChannel channel = sender.openOutputChannel(2, segmentSize);
+				ByteBuffer chunk = ByteBuffer.allocate(WRITE_SIZE);
+				for (int position = 0; position < length; ) {
+					chunk.clear();
+					while (chunk.hasRemaining() && position < length)
+						chunk.put(valueAt(position++));
+					chunk.flip();
+					channel.write(chunk);
+				}
+				channel.close();
+			} catch (InterruptedException except) {
+			} catch (IOException except) {
+				except.printStackTrace();
+			} finally {
+				clock.detach();
+			}
+		}));
+
+		ReassemblingChannel channel = receiver.openInputChannel(1);
+		ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+		int position = 0;
+		while (channel.read(buffer) >= 0) {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				if (buffer.get() != valueAt(position))
+					throw new IllegalStateException("Byte " + position + " of the stream is wrong");
+				position++;
+			}
+			buffer.clear();
+		}
+		channel.close();
+
+		if (position != length)
+			throw new IllegalStateException("Stream ended after " + position + " of " + length + " bytes");
+		return clock.now();
+	}
+
+	/*
+	 * Byte at a position in the stream, running through every value
+	 * (including flags and escapes) out of step with the segments.
+	 */
+	private static byte valueAt(int position) {
+		return (byte) (position * 7 + position / 251);
+	}
+}
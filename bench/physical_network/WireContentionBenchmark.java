@@ -0,0 +1,81 @@
+package physical_network;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures wire throughput with many devices setting voltages at once while
+ * receivers keep testing the voltage, as ThermalNoise and polling network
+ * cards do. Compares the original locking wire with MyTwistedWirePair.
+ * <p>
+ * Usage: WireContentionBenchmark [seconds per run] [writer counts ...]
+ */
+public class WireContentionBenchmark {
+
+	// Receivers testing the voltage during each run.
+	private static final int READERS = 4;
+
+	public static void main(String[] args) throws InterruptedException {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		int[] writerCounts = {8, 32, 64};
+		if (args.length > 1) {
+			writerCounts = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				writerCounts[i - 1] = Integer.parseInt(args[i]);
+		}
+
+		System.out.printf("%-24s %8s %16s %16s%n", "wire", "writers", "sets/s", "gets/s");
+		for (int writers : writerCounts) {
+			run("LockingTwistedWirePair", new LockingTwistedWirePair(), writers, seconds);
+			run("MyTwistedWirePair", new MyTwistedWirePair(), writers, seconds);
+		}
+	}
+
+	private static void run(String name, TwistedWirePair wire, int writers, int seconds) throws InterruptedException {
+		AtomicBoolean running = new AtomicBoolean(true);
+		LongAdder sets = new LongAdder();
+		LongAdder gets = new LongAdder();
+		CountDownLatch ready = new CountDownLatch(writers + READERS);
+		Thread[] threads = new Thread[writers + READERS];
+
+		for (int i = 0; i < writers; i++) {
+			WireConnection connection = wire.connect("Device" + i);
+			threads[i] = new Thread(() -> {
+				long count = 0;
+				double voltage = 2.5;
+				ready.countDown();
+				while (running.get()) {
+					connection.setVoltage(voltage);
+					voltage = -voltage;
+					count++;
+				}
+				sets.add(count);
+			});
+		}
+		for (int i = 0; i < READERS; i++) {
+			WireConnection connection = wire.connect("Receiver" + i);
+			threads[writers + i] = new Thread(() -> {
+				long count = 0;
+				double sum = 0;
+				ready.countDown();
+				while (running.get()) {
+					sum += connection.getVoltage();
+					count++;
+				}
+				gets.add(count + (sum == Double.MAX_VALUE ? 1 : 0));
+			});
+		}
+
+		for (Thread thread : threads)
+			thread.start();
+		ready.await();
+		Thread.sleep(seconds * 1000L);
+		running.set(false);
+		for (Thread thread : threads)
+			thread.join();
+
+		System.out.printf("%-24s %8d %16d %16d%n", name, writers,
+				sets.sum() / seconds, gets.sum() / seconds);
+	}
+}
@@ -0,0 +1,22 @@
+package physical_network;
+
+/**
+ * Automatic repeat request protocols supported by a network card.
+ * <p>
+ * Both are sliding window protocols. A window size of one gives
+ * the original Stop &amp; Wait behaviour.
+ */
+public enum ArqMode {
+
+	/*
+	 * Receiver only accepts the next frame in sequence and acknowledges cumulatively.
+	 * On a timeout the sender retransmits every unacknowledged frame.
+	 */
+	GO_BACK_N,
+
+	/*
+	 * Receiver buffers out of order frames and acknowledges each one individually.
+	 * On a timeout the sender only retransmits the frame that timed out.
+	 */
+	SELECTIVE_REPEAT
+}
@@ -0,0 +1,71 @@
+package physical_network;
+
+/**
+ * Ways a network card's receiver can decide the level of each symbol from
+ * the wire.
+ * <p>
+ * A single sample in the middle of a pulse is lost to one burst of noise at
+ * the wrong moment. Taking several samples across the pulse and combining
+ * them lets the receiver ride out noise shorter than the pulse, at the cost
+ * of waking the receiver more often.
+ */
+public enum BitDecision {
+
+	/*
+	 * Original receiver: one sample in the middle of each pulse.
+	 */
+	MID_PULSE {
+		double decide(double[] samples, int count, LineCoding coding) {
+			return samples[0];
+		}
+	},
+
+	/*
+	 * The symbol level most of the samples are nearest, with ties going to
+	 * the level nearest their mean.
+	 */
+	MAJORITY {
+		double decide(double[] samples, int count, LineCoding coding) {
+			double best = 0;
+			int bestVotes = 0;
+			boolean tied = false;
+			for (int i = 0; i < count; i++) {
+				double level = coding.symbolLevel(samples[i]);
+				int votes = 0;
+				for (int j = 0; j < count; j++) {
+					if (coding.symbolLevel(samples[j]) == level)
+						votes++;
+				}
+				if (votes > bestVotes) {
+					best = level;
+					bestVotes = votes;
+					tied = false;
+				} else if (votes == bestVotes && level != best) {
+					tied = true;
+				}
+			}
+			return tied ? coding.symbolLevel(INTEGRATE.decide(samples, count, coding)) : best;
+		}
+	},
+
+	/*
+	 * Integrate and dump: the mean of the samples, which averages out noise
+	 * rather than outvoting it.
+	 */
+	INTEGRATE {
+		double decide(double[] samples, int count, LineCoding coding) {
+			double sum = 0;
+			for (int i = 0; i < count; i++)
+				sum += samples[i];
+			return sum / count;
+		}
+	};
+
+	/*
+	 * Level (as a fraction of the high voltage) of a symbol from the levels
+	 * sampled across it.
+	 *
+	 * @param count Number of samples taken.
+	 */
+	abstract double decide(double[] samples, int count, LineCoding coding);
+}
@@ -0,0 +1,172 @@
+package physical_network;
+
+import java.util.Arrays;
+
+/**
+ * Joins wire segments together, passing frames between them like an Ethernet
+ * bridge or switch.
+ * <p>
+ * The bridge has a network card on each segment as a port. It learns which
+ * port each device is on from the source of the frames it receives, and
+ * sends a frame only out of the port its destination was last seen on.
+ * Frames for devices on the segment they came from go no further, and frames
+ * for devices not seen yet (or not for a while) are flooded out of every
+ * other port. Each port queues the frames it has to send and contends for its
+ * segment like any other card, so a port whose queue is full drops frames and
+ * leaves them to be retransmitted.
+ * <p>
+ * Device numbers must be unique across every segment joined by bridges.
+ */
+public class Bridge {
+
+	// Time after which a device not heard from is forgotten. IEEE 802.1D suggests
+	// five minutes, but frames here take tens of seconds, so it is an hour.
+	private static final long AGEING_TIME = 3600000;
+
+	private final String name;
+	private final ForwardingMode mode;
+	private final SimulationClock clock;
+	private final NetworkCard[] ports;
+
+	// Port each device number was last seen on (-1 if not known) and when.
+	private final int[] portOf = new int[256];
+	private final long[] lastSeen = new long[256];
+
+	private long framesForwarded = 0;
+	private long framesFlooded = 0;
+	private long framesFiltered = 0;
+	private long framesDropped = 0;
+
+	/*
+	 * @param name     Name of the bridge, which its ports are named after.
+	 * @param mode     Whether frames are stored before they are forwarded.
+	 * @param clock    Clock the ports time their signalling against.
+	 * @param segments Wires to connect a port to, in port order.
+	 */
+	public Bridge(String name, ForwardingMode mode, SimulationClock clock, TwistedWirePair... segments) {
+		if (segments.length < 2)
+			throw new IllegalArgumentException("A bridge needs at least two segments");
+
+		this.name = name;
+		this.mode = mode;
+		this.clock = clock;
+
+		ports = new NetworkCard[segments.length];
+		for (int i = 0; i < segments.length; i++)
+			ports[i] = new NetworkCard(name + " port " + i, segments[i], clock);
+
+		Arrays.fill(portOf, -1);
+	}
+
+	/*
+	 * Attaches every port to the bridge, now that it is fully built, and starts it.
+	 */
+	public void init() {
+		for (int i = 0; i < ports.length; i++) {
+			ports[i].setBridge(this, i);
+			ports[i].init();
+		}
+	}
+
+	/*
+	 * Network card acting as a port, so it can be configured to match its
+	 * segment before init().
+	 */
+	public NetworkCard getPort(int port) {
+		return ports[port];
+	}
+
+	public int getPortCount() {
+		return ports.length;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ForwardingMode getMode() {
+		return mode;
+	}
+
+	/*
+	 * Notes that a device sent a frame which arrived on a port.
+	 */
+	synchronized void learn(int device, int port) {
+		portOf[device & 0xFF] = port;
+		lastSeen[device & 0xFF] = clock.now();
+	}
+
+	/*
+	 * Port a device was last seen on, or -1 if it has not been seen recently.
+	 */
+	synchronized int lookup(int device) {
+		int port = portOf[device & 0xFF];
+		if (port >= 0 && clock.now() - lastSeen[device & 0xFF] > AGEING_TIME)
+			portOf[device & 0xFF] = port = -1;
+		return port;
+	}
+
+	/*
+	 * Queues a frame arriving on a port to be sent out of the port its
+	 * destination is on, or flooded out of every other port.
+	 */
+	void route(ForwardedFrame frame, int ingress, int destination) {
+		int egress = lookup(destination);
+
+		if (egress == ingress) {
+			count(0, 0, 1, 0);
+		} else if (egress >= 0) {
+			count(1, 0, 0, 0);
+			forward(frame, egress);
+		} else {
+			count(0, 1, 0, 0);
+			for (int port = 0; port < ports.length; port++) {
+				if (port != ingress)
+					forward(frame, port);
+			}
+		}
+	}
+
+	private void forward(ForwardedFrame frame, int port) {
+		frame.retain();
+		if (!ports[port].forward(frame)) {
+			frame.release();
+			count(0, 0, 0, 1);
+		}
+	}
+
+	private synchronized void count(int forwarded, int flooded, int filtered, int dropped) {
+		framesForwarded += forwarded;
+		framesFlooded += flooded;
+		framesFiltered += filtered;
+		framesDropped += dropped;
+	}
+
+	/*
+	 * Frames sent out of the one port their destination is on.
+	 */
+	public synchronized long getFramesForwarded() {
+		return framesForwarded;
+	}
+
+	/*
+	 * Frames sent out of every other port as their destination was not known.
+	 */
+	public synchronized long getFramesFlooded() {
+		return framesFlooded;
+	}
+
+	/*
+	 * Frames not sent on as their destination is on the segment they came from.
+	 */
+	public synchronized long getFramesFiltered() {
+		return framesFiltered;
+	}
+
+	/*
+	 * Copies of frames dropped because a port's queue was full.
+	 */
+	public synchronized long getFramesDropped() {
+		return framesDropped;
+	}
+}
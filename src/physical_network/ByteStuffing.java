@@ -0,0 +1,83 @@
+package physical_network;
+
+/**
+ * Byte stuffing used to frame data on the wire.
+ * <p>
+ * Frames are terminated by a FLAG byte, so any FLAG or ESCAPE byte inside
+ * a frame is sent preceded by an ESCAPE byte.
+ */
+final class ByteStuffing {
+
+	static final byte FLAG = 0x7E;
+	static final byte ESCAPE = 0x7D;
+
+	private ByteStuffing() {
+	}
+
+	/*
+	 * Largest number of bytes stuffing 'length' bytes can produce.
+	 */
+	static int maxStuffedLength(int length) {
+		return length * 2;
+	}
+
+	/*
+	 * Escapes the first 'length' bytes of a frame into 'out' (which must hold
+	 * maxStuffedLength(length) bytes). The terminating FLAG is not added.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	static int stuff(byte[] frame, int length, byte[] out) {
+		int written = 0;
+		for (int i = 0; i < length; i++) {
+			byte value = frame[i];
+			if (value == FLAG || value == ESCAPE)
+				out[written++] = ESCAPE;
+			out[written++] = value;
+		}
+		return written;
+	}
+
+	/*
+	 * Removes escapes from the first 'length' received bytes of a frame
+	 * (not including the terminating FLAG) into 'out'.
+	 *
+	 * @return Number of bytes written to 'out', or -1 if the frame ends in an escape
+	 *         or does not fit in 'out'.
+	 */
+	static int unstuff(byte[] received, int length, byte[] out) {
+		int written = 0;
+		for (int i = 0; i < length; i++) {
+			byte value = received[i];
+			if (value == ESCAPE) {
+				if (++i == length)
+					return -1;
+				value = received[i];
+			}
+			if (written == out.length)
+				return -1;
+			out[written++] = value;
+		}
+		return written;
+	}
+
+	/*
+	 * Removes escapes from the start of a frame still being received, stopping
+	 * at a trailing escape or once 'out' is full.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	static int unstuffPrefix(byte[] received, int length, byte[] out) {
+		int written = 0;
+		for (int i = 0; i < length && written < out.length; i++) {
+			byte value = received[i];
+			if (value == ESCAPE) {
+				if (++i == length)
+					break;
+				value = received[i];
+			}
+			out[written++] = value;
+		}
+		return written;
+	}
+}
@@ -0,0 +1,37 @@
+package physical_network;
+
+/**
+ * Things a network card logs, with their level and how they are written out.
+ * An event carries one number, which its message formats with %d or %x.
+ */
+enum CardEvent {
+
+	BYTE_RECEIVED(LogLevel.TRACE, "RECEIVED BYTE = %x"),
+	ESCAPED_BYTE_RECEIVED(LogLevel.TRACE, "ESCAPED RECEIVED BYTE = %x"),
+
+	FRAME_RECEIVED(LogLevel.DEBUG, "Frame received"),
+	CORRUPT_FRAME(LogLevel.DEBUG, "Corrupt frame"),
+	VALID_FRAME(LogLevel.DEBUG, "Valid frame %d"),
+	OUT_OF_SEQUENCE_FRAME(LogLevel.DEBUG, "Out of sequence frame %d"),
+	DUPLICATE_FRAME(LogLevel.DEBUG, "Duplicate frame %d"),
+	ACK_ARRIVED(LogLevel.DEBUG, "Putting together ack..."),
+	ACK_ANNOUNCED(LogLevel.DEBUG, "Announcing ack received %d"),
+	ACK_RECEIVED(LogLevel.DEBUG, "Ack received %d"),
+	SENDING_ACK(LogLevel.DEBUG, "Sending ack"),
+	COLLISION(LogLevel.DEBUG, "Collision, backing off %d slots"),
+	RESENDING(LogLevel.DEBUG, "No ack.. Resending frame %d"),
+
+	TRANSMISSIONS_EXHAUSTED(LogLevel.WARN, "Transmissions used up. Giving up on frame %d"),
+	RESYNCHRONISED(LogLevel.DEBUG, "Frames given up on by sender, next expected %d"),
+
+	TRANSMITTER_INTERRUPTED(LogLevel.INFO, "Transmitter Thread Interrupted - terminated."),
+	RECEIVER_INTERRUPTED(LogLevel.INFO, "Receiver Thread Interrupted - terminated.");
+
+	final LogLevel level;
+	final String format;
+
+	CardEvent(LogLevel level, String format) {
+		this.level = level;
+		this.format = format;
+	}
+}
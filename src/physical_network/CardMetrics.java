@@ -0,0 +1,199 @@
+package physical_network;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters and latency histograms for one network card.
+ * <p>
+ * Counters are LongAdders, which spread concurrent updates over several cells,
+ * and histograms are fixed arrays of buckets, so the card's threads record
+ * events without locking or allocating. Queue depths are read from the card's
+ * queues when asked for. The values are read through the getters or, once
+ * the card has been registered, over JMX.
+ */
+public class CardMetrics implements CardMetricsMBean {
+
+	private final SimulationClock clock;
+
+	// Data frames and acknowledgements sent on their own (or forwarded by a bridge
+	// port), and the bytes put on the wire for them after framing.
+	final LongAdder framesSent = new LongAdder();
+	final LongAdder acksSent = new LongAdder();
+	final LongAdder bytesSent = new LongAdder();
+
+	// Data frames sent again after timing out, transmissions cut short by collisions
+	// and data frames given up on after too many transmissions.
+	final LongAdder retransmissions = new LongAdder();
+	final LongAdder collisions = new LongAdder();
+	final LongAdder framesGivenUp = new LongAdder();
+
+	// Data frames for this card passing their check, and acknowledgements for it.
+	final LongAdder framesReceived = new LongAdder();
+	final LongAdder acksReceived = new LongAdder();
+
+	// Frames failing their integrity check, and frames for this card thrown away
+	// as they were delivered already or arrived out of order.
+	final LongAdder checksumFailures = new LongAdder();
+	final LongAdder duplicatesDropped = new LongAdder();
+	final LongAdder outOfOrderDropped = new LongAdder();
+
+	// Frames passed on in order to receive(), and their payload bytes.
+	final LongAdder framesDelivered = new LongAdder();
+	final LongAdder bytesDelivered = new LongAdder();
+
+	// Time from a frame being sent to it being acknowledged, for frames sent once,
+	// and from a frame being handed to send() to it being acknowledged.
+	final LatencyHistogram ackRoundTrip = new LatencyHistogram();
+	final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
+	private final IntSupplier outputQueue;
+	private final IntSupplier inputQueue;
+	private final IntSupplier ackQueue;
+	private final IntSupplier forwardQueue;
+
+	CardMetrics(SimulationClock clock, IntSupplier outputQueue, IntSupplier inputQueue,
+			IntSupplier ackQueue, IntSupplier forwardQueue) {
+		this.clock = clock;
+		this.outputQueue = outputQueue;
+		this.inputQueue = inputQueue;
+		this.ackQueue = ackQueue;
+		this.forwardQueue = forwardQueue;
+	}
+
+	public long getFramesSent() {
+		return framesSent.sum();
+	}
+
+	public long getAcksSent() {
+		return acksSent.sum();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	public long getRetransmissions() {
+		return retransmissions.sum();
+	}
+
+	public long getCollisions() {
+		return collisions.sum();
+	}
+
+	public long getFramesGivenUp() {
+		return framesGivenUp.sum();
+	}
+
+	public long getFramesReceived() {
+		return framesReceived.sum();
+	}
+
+	public long getAcksReceived() {
+		return acksReceived.sum();
+	}
+
+	public long getChecksumFailures() {
+		return checksumFailures.sum();
+	}
+
+	public long getDuplicatesDropped() {
+		return duplicatesDropped.sum();
+	}
+
+	public long getOutOfOrderDropped() {
+		return outOfOrderDropped.sum();
+	}
+
+	public long getFramesDelivered() {
+		return framesDelivered.sum();
+	}
+
+	public long getBytesDelivered() {
+		return bytesDelivered.sum();
+	}
+
+	/*
+	 * Payload bytes delivered per simulated second since the clock started.
+	 */
+	public double getGoodput() {
+		long now = clock.now();
+		return (now == 0) ? 0 : bytesDelivered.sum() * 1000.0 / now;
+	}
+
+	public int getOutputQueueDepth() {
+		return outputQueue.getAsInt();
+	}
+
+	public int getInputQueueDepth() {
+		return inputQueue.getAsInt();
+	}
+
+	public int getAckQueueDepth() {
+		return ackQueue.getAsInt();
+	}
+
+	public int getForwardQueueDepth() {
+		return forwardQueue.getAsInt();
+	}
+
+	public LatencyHistogram getAckRoundTrip() {
+		return ackRoundTrip;
+	}
+
+	public long getAckRoundTripCount() {
+		return ackRoundTrip.getCount();
+	}
+
+	public double getAckRoundTripMean() {
+		return ackRoundTrip.getMean();
+	}
+
+	public long getAckRoundTripMedian() {
+		return ackRoundTrip.getPercentile(0.5);
+	}
+
+	public long getAckRoundTrip99thPercentile() {
+		return ackRoundTrip.getPercentile(0.99);
+	}
+
+	public long getAckRoundTripMax() {
+		return ackRoundTrip.getMax();
+	}
+
+	public LatencyHistogram getDeliveryLatency() {
+		return deliveryLatency;
+	}
+
+	public long getDeliveryLatencyCount() {
+		return deliveryLatency.getCount();
+	}
+
+	public double getDeliveryLatencyMean() {
+		return deliveryLatency.getMean();
+	}
+
+	public long getDeliveryLatencyMedian() {
+		return deliveryLatency.getPercentile(0.5);
+	}
+
+	public long getDeliveryLatency99thPercentile() {
+		return deliveryLatency.getPercentile(0.99);
+	}
+
+	public long getDeliveryLatencyMax() {
+		return deliveryLatency.getMax();
+	}
+
+	/*
+	 * Zeroes every counter and histogram. Updates made meanwhile may be lost.
+	 */
+	public void reset() {
+		for (LongAdder counter : new LongAdder[] {framesSent, acksSent, bytesSent, retransmissions, collisions,
+				framesReceived, acksReceived, checksumFailures, duplicatesDropped, outOfOrderDropped,
+				framesDelivered, bytesDelivered, framesGivenUp})
+			counter.reset();
+		ackRoundTrip.reset();
+		deliveryLatency.reset();
+	}
+}
@@ -0,0 +1,67 @@
+package physical_network;
+
+/**
+ * Management interface of a network card's metrics, as shown by JConsole or
+ * VisualVM once the card has been registered with registerMBean().
+ * Times are in simulated milliseconds.
+ */
+public interface CardMetricsMBean {
+
+	long getFramesSent();
+
+	long getAcksSent();
+
+	long getBytesSent();
+
+	long getRetransmissions();
+
+	long getCollisions();
+
+	long getFramesGivenUp();
+
+	long getFramesReceived();
+
+	long getAcksReceived();
+
+	long getChecksumFailures();
+
+	long getDuplicatesDropped();
+
+	long getOutOfOrderDropped();
+
+	long getFramesDelivered();
+
+	long getBytesDelivered();
+
+	double getGoodput();
+
+	int getOutputQueueDepth();
+
+	int getInputQueueDepth();
+
+	int getAckQueueDepth();
+
+	int getForwardQueueDepth();
+
+	long getAckRoundTripCount();
+
+	double getAckRoundTripMean();
+
+	long getAckRoundTripMedian();
+
+	long getAckRoundTrip99thPercentile();
+
+	long getAckRoundTripMax();
+
+	long getDeliveryLatencyCount();
+
+	double getDeliveryLatencyMean();
+
+	long getDeliveryLatencyMedian();
+
+	long getDeliveryLatency99thPercentile();
+
+	long getDeliveryLatencyMax();
+
+	void reset();
+}
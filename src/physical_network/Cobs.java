@@ -0,0 +1,101 @@
+package physical_network;
+
+/**
+ * Consistent Overhead Byte Stuffing, an alternative to ByteStuffing.
+ * <p>
+ * COBS splits a frame at its zero bytes and replaces each zero with a code
+ * byte giving the distance to the next one, so the output has no zeros and
+ * grows by at most one byte in every 254. Every output byte is then XORed
+ * with FLAG, which turns "no zeros" into "no flags", so frames can still be
+ * terminated by a FLAG byte.
+ */
+final class Cobs {
+
+	private Cobs() {
+	}
+
+	/*
+	 * Largest number of bytes encoding 'length' bytes can produce.
+	 */
+	static int maxEncodedLength(int length) {
+		return length + length / 254 + 1;
+	}
+
+	/*
+	 * Encodes the first 'length' bytes of a frame into 'out' (which must hold
+	 * maxEncodedLength(length) bytes). The terminating FLAG is not added.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	static int encode(byte[] frame, int length, byte[] out) {
+		int codeIndex = 0;
+		int written = 1;
+		int code = 1;
+
+		for (int i = 0; i < length; i++) {
+			byte value = frame[i];
+			if (value != 0) {
+				out[written++] = (byte) (value ^ ByteStuffing.FLAG);
+				code++;
+			}
+			if (value == 0 || code == 0xFF) {
+				out[codeIndex] = (byte) (code ^ ByteStuffing.FLAG);
+				codeIndex = written++;
+				code = 1;
+			}
+		}
+		out[codeIndex] = (byte) (code ^ ByteStuffing.FLAG);
+		return written;
+	}
+
+	/*
+	 * Decodes the first 'length' received bytes of a frame (not including
+	 * the terminating FLAG) into 'out'.
+	 *
+	 * @return Number of bytes written to 'out', or -1 if the bytes are not
+	 *         valid COBS or do not fit in 'out'.
+	 */
+	static int decode(byte[] received, int length, byte[] out) {
+		int written = 0;
+		int i = 0;
+
+		while (i < length) {
+			int code = (received[i++] ^ ByteStuffing.FLAG) & 0xFF;
+			if (code == 0 || i + code - 1 > length || written + code - 1 > out.length)
+				return -1;
+
+			for (int j = 1; j < code; j++)
+				out[written++] = (byte) (received[i++] ^ ByteStuffing.FLAG);
+
+			// Every block but the last and those of 254 bytes ended at a zero.
+			if (code != 0xFF && i < length) {
+				if (written == out.length)
+					return -1;
+				out[written++] = 0;
+			}
+		}
+		return written;
+	}
+
+	/*
+	 * Decodes the start of a frame still being received, stopping once 'out'
+	 * is full. A zero is only known to end a block when the next block starts.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	static int decodePrefix(byte[] received, int length, byte[] out) {
+		int written = 0;
+		int i = 0;
+		while (i < length && written < out.length) {
+			int code = (received[i++] ^ ByteStuffing.FLAG) & 0xFF;
+			if (code == 0)
+				break;
+			int end = Math.min(i + code - 1, length);
+			while (i < end && written < out.length)
+				out[written++] = (byte) (received[i++] ^ ByteStuffing.FLAG);
+			if (code != 0xFF && i < length && written < out.length)
+				out[written++] = 0;
+		}
+		return written;
+	}
+}
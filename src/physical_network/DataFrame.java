@@ -1,66 +1,270 @@
 /*
  *  (c) K.Bryson, Dept. of Computer Science, UCL (2016)
- *  
+ *
  *  YOU MAY MODIFY THIS CLASS TO IMPLEMENT Stop & Wait ARQ PROTOCOL.
  *  (You will submit this class to Moodle.)
- *  
+ *
  */
 
 package physical_network;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Encapsulates the data for a network 'data frame'.
- * At the moment this just includes a payload byte array.
- * This may need to be extended to include necessary header information.
+ * <p>
+ * The header and payload are held together in one byte buffer, laid out as
+ * they are transmitted: source, destination, a two byte frame number, flags,
+ * the check value of the frame's IntegrityCheck and then the payload. An
+ * acknowledgement piggybacked on the frame follows the payload as two more
+ * bytes, flagged in the header, so frames carrying none pay nothing for it.
+ * The header and payload are views over that buffer and checks are computed
+ * in place, so nothing is copied.
+ * <p>
+ * Frames received by a network card come from a pool. Calling release() once
+ * a received frame is finished with lets the card reuse it, so that steady
+ * state sending and receiving allocates nothing.
  *
  * @author kevin-b
  */
 
-public class DataFrame {
+public final class DataFrame {
+
+	// Longest header of any integrity check.
+	final static int MAX_HEADER_SIZE = IntegrityCheck.FIELDS_LENGTH + IntegrityCheck.MAX_LENGTH;
+
+	// Frame numbers are two bytes, big-endian, and wrap around.
+	final static int SEQUENCE_SPACE = 1 << 16;
+
+	// Header fields after the frame number, the flag set when a frame carries an acknowledgement,
+	// the flag set on the last frame of a stream, the flag set on acknowledgement frames and
+	// the flag set on the first frame sent after the sender gave up on earlier ones.
+	private final static int FRAME_NUMBER_INDEX = 2;
+	private final static int FLAGS_INDEX = 4;
+	private final static int ACK_FLAG = 0x01;
+	private final static int END_FLAG = 0x02;
+	private final static int ACK_FRAME_FLAG = 0x04;
+	private final static int SYNC_FLAG = 0x08;
+
+	// Header bytes a bridge needs to route a frame: the addresses, frame number and flags.
+	final static int ROUTING_LENGTH = FLAGS_INDEX + 1;
+
+	// Length of an acknowledgement piggybacked after the payload.
+	private final static int ACK_LENGTH = 2;
+
+	// Default value for maximum payload size in bytes.
+	final static int MAX_PAYLOAD_SIZE = 1500;
+	final static int MAX_FRAME_SIZE = MAX_HEADER_SIZE + MAX_PAYLOAD_SIZE + ACK_LENGTH;
+
+	// Longest frame once coded for error correction.
+	final static int MAX_CODED_FRAME_SIZE = ErrorCorrection.maxEncodedLength(MAX_FRAME_SIZE);
+
+	// Frames kept for reuse by network cards.
+	private final static int POOL_SIZE = 64;
+	private final static ArrayBlockingQueue<DataFrame> pool = new ArrayBlockingQueue<DataFrame>(POOL_SIZE);
+
+	// Whole frame as transmitted, with views of its header and payload.
+	private final byte[] frame;
+	private ByteBuffer header;
+	private ByteBuffer payload;
+	private int length;
+
+	private IntegrityCheck integrityCheck = IntegrityCheck.SUM;
 
-	private final static int CHECKSUM_INDEX = 3;
-	private final static int HEADER_INDEX = 4;
-	private byte[] payload;
 	private int destination = 0;
 	private int source = 0;
-	private byte[] header; // Consider changing to public like payload
 	private int frameNumber;
-	private boolean isAck = false;
+
+	// Acknowledgement piggybacked on the frame (-1 for none).
+	private int ack = -1;
+
+	// Whether the frame is the last segment of a stream.
+	private boolean endOfStream = false;
+
+	// Whether the receiver should skip any frames before this one it is waiting for.
+	private boolean sync = false;
+
+	// Time the frame was handed to a network card to send.
+	private long queuedTime;
+
+	// Completed when a frame sent with sendAsync() is acknowledged or given up on (null otherwise).
+	private CompletableFuture<DeliveryReceipt> receipt;
+
+	// Whether this frame belongs to the pool and whether it is currently in it.
+	private final boolean pooled;
+	private boolean released = false;
 
 	public DataFrame(String payload) {
-		this.payload = payload.getBytes();
+		this(payload.getBytes(), 0);
 	}
 
 	public DataFrame(String payload, int destination) {
-		this.payload = payload.getBytes();
+		this(payload.getBytes(), destination);
+	}
+
+	public DataFrame(byte[] payload, int destination) {
+		// Leaves room to switch to the longest integrity check and piggyback an acknowledgement.
+		this(new byte[MAX_HEADER_SIZE + payload.length + ACK_LENGTH], false);
+		System.arraycopy(payload, 0, frame, headerSize(), payload.length);
+		this.length = headerSize() + payload.length;
 		this.destination = destination;
 	}
 
+	/*
+	 * Copies the remaining bytes of a buffer into a new frame's payload.
+	 */
+	public DataFrame(ByteBuffer payload, int destination) {
+		this(new byte[MAX_HEADER_SIZE + payload.remaining() + ACK_LENGTH], false);
+		this.length = headerSize() + payload.remaining();
+		payload.get(frame, headerSize(), payload.remaining());
+		this.destination = destination;
+	}
+
+	/*
+	 * Wraps the bytes of a received frame without copying them.
+	 */
 	public DataFrame(byte[] input) {
-		this.header = Arrays.copyOfRange(input, 0, HEADER_INDEX + 1);
-		this.payload = Arrays.copyOfRange(input, HEADER_INDEX + 1, input.length);
+		this(input, IntegrityCheck.SUM);
+	}
+
+	public DataFrame(byte[] input, IntegrityCheck integrityCheck) {
+		this(input, false);
+		this.length = input.length;
+		this.integrityCheck = integrityCheck;
+		makeViews();
+	}
+
+	private DataFrame(byte[] frame, boolean pooled) {
+		this.frame = frame;
+		this.pooled = pooled;
+		makeViews();
+	}
+
+	private void makeViews() {
+		int headerSize = Math.min(headerSize(), frame.length);
+
+		ByteBuffer buffer = ByteBuffer.wrap(frame);
+		this.header = buffer.slice(0, headerSize).asReadOnlyBuffer();
+		this.payload = buffer.slice(headerSize, frame.length - headerSize).asReadOnlyBuffer();
+	}
+
+	/*
+	 * Switches the integrity check used for the header, moving the payload
+	 * to follow the new header length.
+	 */
+	public void setIntegrityCheck(IntegrityCheck integrityCheck) {
+		if (integrityCheck == this.integrityCheck)
+			return;
+
+		int payloadLength = Math.max(0, length - headerSize());
+		if (integrityCheck.payloadIndex() + payloadLength > frame.length)
+			throw new IllegalStateException("Frame has no room for a " + integrityCheck + " header");
+
+		if (length > 0) {
+			System.arraycopy(frame, headerSize(), frame, integrityCheck.payloadIndex(), payloadLength);
+			length = integrityCheck.payloadIndex() + payloadLength;
+		}
+		this.integrityCheck = integrityCheck;
+		makeViews();
+	}
+
+	public IntegrityCheck getIntegrityCheck() {
+		return integrityCheck;
+	}
+
+	/*
+	 * Length of the header, which depends on the integrity check.
+	 */
+	int headerSize() {
+		return integrityCheck.payloadIndex();
 	}
 
-	public DataFrame() {
+	/*
+	 * Takes an empty frame from the pool, ready to be filled by a receiver.
+	 */
+	static DataFrame acquire() {
+		DataFrame frame = pool.poll();
+		if (frame == null)
+			frame = new DataFrame(new byte[MAX_FRAME_SIZE], true);
 
+		frame.released = false;
+		frame.length = 0;
+		return frame;
 	}
 
-	public void setIsAck(boolean ack) {
-		this.isAck = ack;
+	/*
+	 * Makes an acknowledgement frame from the pool: a header with no payload,
+	 * flagged as an acknowledgement and carrying the frame number acknowledged.
+	 */
+	static DataFrame acknowledgement(int destination, int frameNumber, int source, IntegrityCheck integrityCheck) {
+		DataFrame ack = acquire();
+		ack.setIntegrityCheck(integrityCheck);
+		ack.destination = destination;
+		ack.frame[0] = (byte) source;
+		ack.frame[1] = (byte) destination;
+		putNumber(ack.frame, FRAME_NUMBER_INDEX, frameNumber);
+		ack.frame[FLAGS_INDEX] = ACK_FRAME_FLAG;
+		ack.length = ack.headerSize();
+		integrityCheck.write(ack.frame, ack.length);
+		return ack;
+	}
+
+	/**
+	 * Hands a frame back to be reused once it is no longer needed.
+	 * The frame must not be used after it has been released.
+	 */
+	public void release() {
+		if (!pooled || released)
+			return;
+		released = true;
+		pool.offer(this);
 	}
 
 	public int getDestination() {
 		return destination;
 	}
 
+	int getPayloadLength() {
+		return Math.max(0, payloadEnd() - headerSize());
+	}
+
+	/*
+	 * Index just past the payload, before any piggybacked acknowledgement.
+	 */
+	private int payloadEnd() {
+		return (length >= headerSize() + ACK_LENGTH && hasAck()) ? length - ACK_LENGTH : length;
+	}
+
+	/*
+	 * Copy of the payload. Use getPayloadBuffer() to read it without copying.
+	 */
 	public byte[] getPayload() {
+		return Arrays.copyOfRange(frame, headerSize(), headerSize() + getPayloadLength());
+	}
+
+	/*
+	 * Read-only view of the payload.
+	 */
+	public ByteBuffer getPayloadBuffer() {
+		payload.clear();
+		payload.limit(getPayloadLength());
 		return payload;
 	}
 
+	/*
+	 * Read-only view of the header.
+	 */
+	public ByteBuffer getHeaderBuffer() {
+		header.clear();
+		header.limit(Math.min(headerSize(), length));
+		return header;
+	}
+
 	public String toString() {
-		return new String(payload);
+		return new String(frame, headerSize(), getPayloadLength());
 	}
 
 	/*
@@ -76,44 +280,51 @@ public class DataFrame {
 
 	/*
 	 * This method should return the byte sequence of the transmitted bytes.
-	 * At the moment it is just the payload data ... but extensions should
-	 * include needed header information for the data frame.
 	 * Note that this does not need sentinel or byte stuffing
 	 * to be implemented since this is carried out as the data
 	 * frame is transmitted and received.
+	 *
+	 * This returns a copy; network cards use getFrameArray() and getLength().
 	 */
 	public byte[] getTransmittedBytes() {
-		byte[] frame = new byte[header.length + ((isAck) ? 0 : payload.length)];
-		System.arraycopy(header, 0, frame, 0, header.length);
-		if (!isAck)
-			System.arraycopy(payload, 0, frame, header.length, payload.length);
-		return frame;
+		return Arrays.copyOf(frame, length);
 	}
 
 	/*
-	 * Implements the internet checksum
+	 * Array holding the frame as transmitted (only the first getLength() bytes are used).
+	 * Receivers write unstuffed bytes straight into it and then call setLength().
 	 */
-	private static byte[] checksum(byte[] buffer) {
-		int sum = 0;
-		for (byte b : buffer)
-			sum += b;
+	byte[] getFrameArray() {
+		return frame;
+	}
 
-		sum = (sum > Short.MAX_VALUE) ? (short) ((sum  & 0xFFFF) + 1) : sum;
+	int getLength() {
+		return length;
+	}
 
-		byte[] output = {
-				(byte) ((sum >> 8) & 0xff),
-				(byte) (sum & 0xff)
-		};
+	void setLength(int length) {
+		this.length = length;
+	}
 
-		return output;
+	/*
+	 * Whether a frame is an acknowledgement rather than data.
+	 */
+	boolean isAck() {
+		return isAck(frame);
 	}
 
-	public byte[] getHeader() {
-		return header;
+	/*
+	 * Whether the header at the start of some bytes is that of an acknowledgement.
+	 */
+	static boolean isAck(byte[] header) {
+		return (header[FLAGS_INDEX] & ACK_FRAME_FLAG) != 0;
 	}
 
-	public void setHeader(byte[] bytes) {
-		this.header = bytes;
+	/*
+	 * Copy of the header. Use getHeaderBuffer() to read it without copying.
+	 */
+	public byte[] getHeader() {
+		return Arrays.copyOf(frame, Math.min(headerSize(), length));
 	}
 
 	// TODO: 20/01/2017 Consider getting rid of this method
@@ -123,35 +334,129 @@ public class DataFrame {
 	}
 
 	private void makeHeader() {
-		header = new byte[HEADER_INDEX + 1];
-		header[0] = (byte) source;
-		header[1] = (byte) destination;
-		header[2] = (byte) frameNumber;
+		frame[0] = (byte) source;
+		frame[1] = (byte) destination;
+		putNumber(frame, FRAME_NUMBER_INDEX, frameNumber);
+		frame[FLAGS_INDEX] = (byte) ((ack < 0 ? 0 : ACK_FLAG) | (endOfStream ? END_FLAG : 0) | (sync ? SYNC_FLAG : 0));
 
-		byte[] frameNoChecksum = new byte[CHECKSUM_INDEX + payload.length];
-		System.arraycopy(header, 0, frameNoChecksum, 0, CHECKSUM_INDEX);
-		System.arraycopy(payload, 0, frameNoChecksum, CHECKSUM_INDEX, payload.length);
-		byte[] checksum = checksum(frameNoChecksum);
+		integrityCheck.write(frame, length);
+	}
 
-		header[CHECKSUM_INDEX] = checksum[0];
-		header[HEADER_INDEX] = checksum[1];
+	private static void putNumber(byte[] bytes, int index, int number) {
+		bytes[index] = (byte) (number >>> 8);
+		bytes[index + 1] = (byte) number;
+	}
+
+	private static int getNumber(byte[] bytes, int index) {
+		return (bytes[index] & 0xFF) << 8 | (bytes[index + 1] & 0xFF);
+	}
+
+	/*
+	 * Piggybacks an acknowledgement of a frame number on this frame after its
+	 * payload, or removes it if the frame number is -1.
+	 */
+	void setAck(int frameNumber) {
+		int end = payloadEnd();
+		if (frameNumber >= 0)
+			putNumber(frame, end, frameNumber);
+		length = frameNumber >= 0 ? end + ACK_LENGTH : end;
+
+		this.ack = frameNumber;
+		makeHeader();
+	}
+
+	/*
+	 * Whether a frame carries a piggybacked acknowledgement.
+	 */
+	boolean hasAck() {
+		return (frame[FLAGS_INDEX] & ACK_FLAG) != 0;
+	}
+
+	/*
+	 * Frame number (0 - 65535) acknowledged by a received frame.
+	 */
+	int getAck() {
+		return getNumber(frame, length - ACK_LENGTH);
+	}
+
+	/*
+	 * Marks a frame to be sent as the last segment of a stream.
+	 */
+	void setEndOfStream(boolean endOfStream) {
+		this.endOfStream = endOfStream;
+	}
+
+	/*
+	 * Whether a received frame is the last segment of a stream.
+	 */
+	boolean isEndOfStream() {
+		return (frame[FLAGS_INDEX] & END_FLAG) != 0;
+	}
+
+	/*
+	 * Marks a frame to be sent as the first after frames its sender gave up on,
+	 * so the receiver stops waiting for them. Takes effect when the header is next made.
+	 */
+	void setSync(boolean sync) {
+		this.sync = sync;
+	}
+
+	/*
+	 * Whether a received frame was sent after frames its sender gave up on.
+	 */
+	boolean isSync() {
+		return (frame[FLAGS_INDEX] & SYNC_FLAG) != 0;
+	}
+
+	long getQueuedTime() {
+		return queuedTime;
+	}
+
+	void setQueuedTime(long queuedTime) {
+		this.queuedTime = queuedTime;
+	}
+
+	CompletableFuture<DeliveryReceipt> getReceipt() {
+		return receipt;
+	}
+
+	void setReceipt(CompletableFuture<DeliveryReceipt> receipt) {
+		this.receipt = receipt;
 	}
 
 	public void setSource(int source) {
 		this.source = source;
 	}
 
+	/*
+	 * Source device number of a received frame.
+	 */
+	public int getSource() {
+		return frame[0] & 0xFF;
+	}
+
+	/*
+	 * Sequence number (0 - 65535) of a received frame.
+	 */
+	public int getFrameNumber() {
+		return getNumber(frame, FRAME_NUMBER_INDEX);
+	}
+
 	public synchronized boolean checkHeader(int dest, int expectedFrameNumber) {
-		byte[] frameNoChecksum = new byte[header.length - 1 + payload.length];
-		System.arraycopy(header, 0, frameNoChecksum, 0, header.length - 1);
-		System.arraycopy(payload, 0, frameNoChecksum, header.length - 1, payload.length);
-		byte[] checksum = checksum(frameNoChecksum);
+		return checkHeader(dest) && getFrameNumber() == (expectedFrameNumber & (SEQUENCE_SPACE - 1));
+	}
 
-		return (dest == header[1] &&
-				expectedFrameNumber == header[2] &&
-				checksum[0] == header[CHECKSUM_INDEX] &&
-				checksum[1] == header[HEADER_INDEX]);
+	/*
+	 * Checks a received frame is addressed to dest and passes its integrity check.
+	 */
+	public synchronized boolean checkHeader(int dest) {
+		return dest == (frame[1] & 0xFF) && isIntact();
+	}
 
+	/*
+	 * Checks a received frame passes its integrity check, whoever it is addressed to.
+	 */
+	synchronized boolean isIntact() {
+		return length >= headerSize() && integrityCheck.verify(frame, length);
 	}
 }
-
@@ -0,0 +1,74 @@
+package physical_network;
+
+/**
+ * Outcome of a data frame sent with NetworkCard.sendAsync(): whether it was
+ * acknowledged, how many times it was transmitted and how long it took.
+ */
+public class DeliveryReceipt {
+
+	private final int destination;
+	private final int frameNumber;
+	private final boolean delivered;
+	private final int transmissions;
+	private final long queuedTime;
+	private final long completedTime;
+
+	DeliveryReceipt(int destination, int frameNumber, boolean delivered, int transmissions,
+			long queuedTime, long completedTime) {
+		this.destination = destination;
+		this.frameNumber = frameNumber;
+		this.delivered = delivered;
+		this.transmissions = transmissions;
+		this.queuedTime = queuedTime;
+		this.completedTime = completedTime;
+	}
+
+	public int getDestination() {
+		return destination;
+	}
+
+	/*
+	 * Frame number the frame was sent with (-1 if it was never sent).
+	 */
+	public int getFrameNumber() {
+		return frameNumber;
+	}
+
+	/*
+	 * Whether the frame was acknowledged. If not, it was given up on after too
+	 * many transmissions, or the card stopped sending before it was acknowledged.
+	 */
+	public boolean isDelivered() {
+		return delivered;
+	}
+
+	public int getTransmissions() {
+		return transmissions;
+	}
+
+	/*
+	 * Simulation time the frame was handed to the card.
+	 */
+	public long getQueuedTime() {
+		return queuedTime;
+	}
+
+	/*
+	 * Simulation time the frame was acknowledged or given up on.
+	 */
+	public long getCompletedTime() {
+		return completedTime;
+	}
+
+	/*
+	 * Time from the frame being handed to the card to it being acknowledged or given up on.
+	 */
+	public long getLatency() {
+		return completedTime - queuedTime;
+	}
+
+	public String toString() {
+		return (delivered ? "Delivered" : "Not delivered") + " frame " + frameNumber + " to device " + destination
+				+ " after " + transmissions + " transmissions in " + getLatency() + " ms";
+	}
+}
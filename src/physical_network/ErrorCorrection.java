@@ -0,0 +1,122 @@
+package physical_network;
+
+/**
+ * Forward error correction a network card can add to its frames, so that a
+ * receiver can correct bit errors caused by noise rather than dropping the
+ * frame and waiting for the sender to time out and send it again.
+ * <p>
+ * Frames are coded after their integrity check has been computed and decoded
+ * before it is verified, so the check still catches errors too many to correct.
+ */
+public enum ErrorCorrection {
+
+	/*
+	 * Frames are sent as they are.
+	 */
+	NONE {
+		int encodedLength(int length) {
+			return length;
+		}
+
+		int encode(byte[] frame, int length, byte[] out) {
+			System.arraycopy(frame, 0, out, 0, length);
+			return length;
+		}
+
+		int decode(byte[] received, int length, byte[] out) {
+			if (length > out.length)
+				return -1;
+			System.arraycopy(received, 0, out, 0, length);
+			return length;
+		}
+
+		int decodePrefix(byte[] received, int length, byte[] out) {
+			int count = Math.min(length, out.length);
+			System.arraycopy(received, 0, out, 0, count);
+			return count;
+		}
+	},
+
+	/*
+	 * Extended Hamming (8,4) code on each half byte: corrects one bit error in
+	 * every four data bits and doubles the length of a frame.
+	 */
+	HAMMING {
+		int encodedLength(int length) {
+			return Hamming.encodedLength(length);
+		}
+
+		int encode(byte[] frame, int length, byte[] out) {
+			return Hamming.encode(frame, length, out);
+		}
+
+		int decode(byte[] received, int length, byte[] out) {
+			return Hamming.decode(received, length, out);
+		}
+
+		int decodePrefix(byte[] received, int length, byte[] out) {
+			return Hamming.decodePrefix(received, length, out);
+		}
+	},
+
+	/*
+	 * Reed-Solomon code: corrects up to four wrong bytes in every 247 for eight
+	 * extra bytes, however many bits of them are wrong.
+	 */
+	REED_SOLOMON {
+		int encodedLength(int length) {
+			return ReedSolomon.encodedLength(length);
+		}
+
+		int encode(byte[] frame, int length, byte[] out) {
+			return ReedSolomon.encode(frame, length, out);
+		}
+
+		int decode(byte[] received, int length, byte[] out) {
+			return ReedSolomon.decode(received, length, out);
+		}
+
+		int decodePrefix(byte[] received, int length, byte[] out) {
+			return ReedSolomon.decodePrefix(received, length, out);
+		}
+	};
+
+	/*
+	 * Largest number of bytes any error correction can make of 'length' bytes.
+	 */
+	static int maxEncodedLength(int length) {
+		int max = length;
+		for (ErrorCorrection correction : values())
+			max = Math.max(max, correction.encodedLength(length));
+		return max;
+	}
+
+	/*
+	 * Number of bytes 'length' bytes are coded as.
+	 */
+	abstract int encodedLength(int length);
+
+	/*
+	 * Codes the first 'length' bytes of a frame into 'out'.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	abstract int encode(byte[] frame, int length, byte[] out);
+
+	/*
+	 * Decodes the first 'length' received bytes of a frame into 'out', correcting
+	 * what errors it can. The received bytes may be corrected in place.
+	 *
+	 * @return Number of bytes written to 'out', or -1 if the errors cannot be
+	 *         corrected or the frame does not fit in 'out'.
+	 */
+	abstract int decode(byte[] received, int length, byte[] out);
+
+	/*
+	 * Decodes the start of a frame still being received, up to the size of 'out',
+	 * for frames longer than 'out'. Errors may be left uncorrected.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	abstract int decodePrefix(byte[] received, int length, byte[] out);
+}
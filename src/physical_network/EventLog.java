@@ -0,0 +1,172 @@
+package physical_network;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log of device events which keeps console output out of the devices' threads.
+ * <p>
+ * The level is set when the simulator starts with -Dphysical_network.log=LEVEL
+ * (WARN, INFO, DEBUG or TRACE, default INFO; any other value falls back to
+ * INFO with a warning). The DEBUG and TRACE flags are constants, so a check of one guarding a log call is compiled away when its
+ * level is off.
+ * <p>
+ * Logged events are put in a fixed ring buffer as the event, device name, time
+ * and one number, without formatting or allocating anything, and a background
+ * thread formats and prints them. Any number of threads can log at once
+ * without locking (a bounded multi-producer queue after D. Vyukov). If the
+ * writer falls behind and the buffer fills, events are dropped rather than
+ * holding up the device, and the number dropped is printed. The writer sleeps
+ * while the buffer is empty and the first event logged after that wakes it.
+ */
+final class EventLog {
+
+	static final LogLevel LEVEL = level(System.getProperty("physical_network.log", "INFO"));
+	static final boolean DEBUG = LEVEL.compareTo(LogLevel.DEBUG) >= 0;
+	static final boolean TRACE = LEVEL.compareTo(LogLevel.TRACE) >= 0;
+
+	private static final int CAPACITY = 1 << 16;
+	private static final int MASK = CAPACITY - 1;
+
+	// Slot i holds the event at position p (p mod CAPACITY = i) once its sequence is p + 1,
+	// and is free for position p when its sequence is p.
+	private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+	private static final CardEvent[] events = new CardEvent[CAPACITY];
+	private static final String[] devices = new String[CAPACITY];
+	private static final long[] times = new long[CAPACITY];
+	private static final long[] values = new long[CAPACITY];
+
+	// Next position to log at, and next position to print (only changed by drain()).
+	private static final AtomicLong tail = new AtomicLong();
+	private static long head = 0;
+
+	private static final LongAdder dropped = new LongAdder();
+	private static long droppedReported = 0;
+
+	private static final AtomicBoolean writerStarted = new AtomicBoolean();
+	private static volatile Thread writer;
+
+	// Set while the writer is parked or about to park, so loggers know to wake it.
+	private static volatile boolean writerWaiting = false;
+
+	static {
+		for (int i = 0; i < CAPACITY; i++)
+			sequences.set(i, i);
+	}
+
+	private EventLog() {
+	}
+
+	/*
+	 * Level named by the physical_network.log property, or INFO if it names none.
+	 */
+	private static LogLevel level(String name) {
+		try {
+			return LogLevel.valueOf(name.toUpperCase());
+		} catch (IllegalArgumentException except) {
+			System.err.println("EventLog - Unknown log level " + name + ", using INFO");
+			return LogLevel.INFO;
+		}
+	}
+
+	/*
+	 * Logs an event if its level is on.
+	 *
+	 * @param device Name of the device the event happened to.
+	 * @param time   Simulation time of the event.
+	 * @param value  Number the event's message shows, if any.
+	 */
+	static void log(CardEvent event, String device, long time, long value) {
+		if (event.level.compareTo(LEVEL) > 0)
+			return;
+		if (!writerStarted.get())
+			startWriter();
+
+		long position;
+		while (true) {
+			position = tail.get();
+			long difference = sequences.get((int) position & MASK) - position;
+			if (difference == 0 && tail.compareAndSet(position, position + 1))
+				break;
+			if (difference < 0) {
+				dropped.increment();
+				return;
+			}
+		}
+
+		int slot = (int) position & MASK;
+		events[slot] = event;
+		devices[slot] = device;
+		times[slot] = time;
+		values[slot] = value;
+		// A full store, so the writer cannot miss the event between checking the slot and parking.
+		sequences.set(slot, position + 1);
+		if (writerWaiting) {
+			Thread parked = writer;
+			if (parked != null)
+				LockSupport.unpark(parked);
+		}
+	}
+
+	/*
+	 * Number of events dropped because the buffer was full.
+	 */
+	static long getDropped() {
+		return dropped.sum();
+	}
+
+	/*
+	 * Prints every event logged so far.
+	 */
+	static synchronized void drain() {
+		StringBuilder lines = new StringBuilder();
+
+		while (true) {
+			int slot = (int) head & MASK;
+			if (sequences.get(slot) != head + 1)
+				break;
+
+			lines.append(times[slot]).append(' ').append(devices[slot]).append(" - ")
+					.append(String.format(events[slot].format, values[slot])).append(System.lineSeparator());
+			devices[slot] = null;
+			sequences.lazySet(slot, head + CAPACITY);
+			head++;
+		}
+
+		long lost = dropped.sum();
+		if (lost != droppedReported) {
+			lines.append("EventLog - ").append(lost - droppedReported).append(" events dropped").append(System.lineSeparator());
+			droppedReported = lost;
+		}
+
+		if (lines.length() > 0)
+			System.out.print(lines);
+	}
+
+	/*
+	 * Starts the thread printing events. It runs in real time, outside the
+	 * simulation clock, and prints any events left when the JVM exits.
+	 */
+	private static void startWriter() {
+		if (!writerStarted.compareAndSet(false, true))
+			return;
+
+		Thread thread = new Thread(() -> {
+			while (true) {
+				drain();
+				writerWaiting = true;
+				if (sequences.get((int) head & MASK) != head + 1)
+					LockSupport.park();
+				writerWaiting = false;
+			}
+		}, "EventLog writer");
+		thread.setDaemon(true);
+		writer = thread;
+		thread.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(EventLog::drain));
+	}
+}
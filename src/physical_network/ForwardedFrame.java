@@ -0,0 +1,110 @@
+package physical_network;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A frame passing through a bridge, held as the framed bytes received off the
+ * wire so they can be sent on unchanged.
+ * <p>
+ * The port a frame arrives on appends bytes as they are received, so a port
+ * sending it on in cut-through mode can follow close behind. A frame flooded
+ * to several ports is shared by them, and goes back to the pool once the
+ * port receiving it and every port sending it have released it.
+ */
+final class ForwardedFrame {
+
+	// Frames kept for reuse by bridges.
+	private static final int POOL_SIZE = 64;
+	private static final ArrayBlockingQueue<ForwardedFrame> pool = new ArrayBlockingQueue<ForwardedFrame>(POOL_SIZE);
+
+	private final byte[] bytes = new byte[Framing.maxEncodedLength(DataFrame.MAX_CODED_FRAME_SIZE)];
+	private volatile int length;
+
+	// Whether the whole frame has arrived, or it was cut short on the way in.
+	private volatile boolean complete;
+	private volatile boolean aborted;
+
+	private boolean ack;
+
+	private final AtomicInteger references = new AtomicInteger();
+
+	private ForwardedFrame() {
+	}
+
+	/*
+	 * Takes an empty frame from the pool, held by the caller.
+	 */
+	static ForwardedFrame acquire() {
+		ForwardedFrame frame = pool.poll();
+		if (frame == null)
+			frame = new ForwardedFrame();
+
+		frame.length = 0;
+		frame.complete = false;
+		frame.aborted = false;
+		frame.ack = false;
+		frame.references.set(1);
+		return frame;
+	}
+
+	/*
+	 * Adds a holder, for each port the frame is sent on by.
+	 */
+	void retain() {
+		references.incrementAndGet();
+	}
+
+	void release() {
+		if (references.decrementAndGet() == 0)
+			pool.offer(this);
+	}
+
+	/*
+	 * Adds a received byte.
+	 *
+	 * @return false if the frame is too long to hold.
+	 */
+	boolean append(byte value) {
+		if (length == bytes.length)
+			return false;
+		bytes[length] = value;
+		length++;
+		return true;
+	}
+
+	byte[] getBytes() {
+		return bytes;
+	}
+
+	int getLength() {
+		return length;
+	}
+
+	void setComplete() {
+		complete = true;
+	}
+
+	void setAborted() {
+		aborted = true;
+	}
+
+	/*
+	 * Whether no more bytes will be appended.
+	 */
+	boolean isEnded() {
+		return complete || aborted;
+	}
+
+	boolean isAborted() {
+		return aborted;
+	}
+
+	void setAck(boolean ack) {
+		this.ack = ack;
+	}
+
+	boolean isAck() {
+		return ack;
+	}
+}
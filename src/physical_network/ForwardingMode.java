@@ -0,0 +1,20 @@
+package physical_network;
+
+/**
+ * How a bridge passes frames from the port they arrive on to the port they leave by.
+ */
+public enum ForwardingMode {
+
+	/*
+	 * Whole frame is received and its integrity check verified before it is sent on.
+	 * Corrupted frames go no further, but every hop adds a frame's transmission time.
+	 */
+	STORE_AND_FORWARD,
+
+	/*
+	 * Frame is sent on as soon as its header shows where it is going, while the rest
+	 * is still arriving. Each hop only adds a few bytes' delay, but corrupted frames
+	 * are forwarded too and only dropped by the card they are addressed to.
+	 */
+	CUT_THROUGH
+}
@@ -0,0 +1,87 @@
+package physical_network;
+
+/**
+ * Ways a network card can keep FLAG bytes out of a frame's contents,
+ * so that a FLAG byte always marks the end of a frame.
+ */
+public enum Framing {
+
+	/*
+	 * Original framing: FLAG and ESCAPE bytes are sent preceded by an ESCAPE.
+	 * Costs nothing for text, but can double the size of binary data.
+	 */
+	BYTE_STUFFING {
+		int encode(byte[] frame, int length, byte[] out) {
+			return ByteStuffing.stuff(frame, length, out);
+		}
+
+		int decode(byte[] received, int length, byte[] out) {
+			return ByteStuffing.unstuff(received, length, out);
+		}
+
+		int decodePrefix(byte[] received, int length, byte[] out) {
+			return ByteStuffing.unstuffPrefix(received, length, out);
+		}
+
+		boolean isEscape(byte value) {
+			return value == ByteStuffing.ESCAPE;
+		}
+	},
+
+	/*
+	 * Consistent Overhead Byte Stuffing: one extra byte per frame and one more
+	 * for every 254 bytes, whatever the contents.
+	 */
+	COBS {
+		int encode(byte[] frame, int length, byte[] out) {
+			return Cobs.encode(frame, length, out);
+		}
+
+		int decode(byte[] received, int length, byte[] out) {
+			return Cobs.decode(received, length, out);
+		}
+
+		int decodePrefix(byte[] received, int length, byte[] out) {
+			return Cobs.decodePrefix(received, length, out);
+		}
+
+		boolean isEscape(byte value) {
+			return false;
+		}
+	};
+
+	/*
+	 * Largest number of bytes any framing can make of 'length' bytes.
+	 */
+	static int maxEncodedLength(int length) {
+		return Math.max(ByteStuffing.maxStuffedLength(length), Cobs.maxEncodedLength(length));
+	}
+
+	/*
+	 * Encodes the first 'length' bytes of a frame into 'out', not including
+	 * the terminating FLAG.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	abstract int encode(byte[] frame, int length, byte[] out);
+
+	/*
+	 * Decodes the first 'length' received bytes of a frame into 'out'.
+	 *
+	 * @return Number of bytes written to 'out', or -1 if the bytes are not a valid encoding.
+	 */
+	abstract int decode(byte[] received, int length, byte[] out);
+
+	/*
+	 * Decodes the start of a frame still being received: as many bytes as the
+	 * first 'length' received bytes settle, up to the size of 'out'.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	abstract int decodePrefix(byte[] received, int length, byte[] out);
+
+	/*
+	 * Whether a received byte means the byte after it is data, even if it is a FLAG.
+	 */
+	abstract boolean isEscape(byte value);
+}
@@ -0,0 +1,100 @@
+package physical_network;
+
+import java.util.Arrays;
+
+/**
+ * Extended Hamming (8,4) code, used by ErrorCorrection.HAMMING.
+ * <p>
+ * Each half byte is sent as a byte: the four data bits, three Hamming parity
+ * bits and an overall parity bit. Any one bit error in a code byte is
+ * corrected, and any two are detected (SECDED), at the cost of doubling the
+ * length of a frame. Coding and decoding are table lookups.
+ */
+final class Hamming {
+
+	// Code byte for each half byte, and the half byte each code byte decodes to
+	// (-1 if it is two or more bit errors away from every code byte).
+	private static final byte[] CODE = new byte[16];
+	private static final byte[] DECODE = new byte[256];
+
+	static {
+		for (int data = 0; data < 16; data++) {
+			int d0 = data & 1, d1 = (data >> 1) & 1, d2 = (data >> 2) & 1, d3 = (data >> 3) & 1;
+			int p0 = d0 ^ d1 ^ d3;
+			int p1 = d0 ^ d2 ^ d3;
+			int p2 = d1 ^ d2 ^ d3;
+
+			// Bits 0 - 6 are Hamming(7,4) positions 1 - 7, bit 7 the parity of the other seven.
+			int code = p0 | p1 << 1 | d0 << 2 | p2 << 3 | d1 << 4 | d2 << 5 | d3 << 6;
+			code |= (Integer.bitCount(code) & 1) << 7;
+			CODE[data] = (byte) code;
+		}
+
+		Arrays.fill(DECODE, (byte) -1);
+		for (int data = 0; data < 16; data++) {
+			int code = CODE[data] & 0xFF;
+			DECODE[code] = (byte) data;
+			for (int bit = 0; bit < 8; bit++)
+				DECODE[code ^ (1 << bit)] = (byte) data;
+		}
+	}
+
+	private Hamming() {
+	}
+
+	static int encodedLength(int length) {
+		return length * 2;
+	}
+
+	/*
+	 * Codes the first 'length' bytes of a frame into 'out', high half byte first.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	static int encode(byte[] frame, int length, byte[] out) {
+		for (int i = 0; i < length; i++) {
+			out[2 * i] = CODE[(frame[i] >> 4) & 0x0F];
+			out[2 * i + 1] = CODE[frame[i] & 0x0F];
+		}
+		return length * 2;
+	}
+
+	/*
+	 * Decodes the first 'length' received bytes of a frame into 'out',
+	 * correcting one bit error in each code byte.
+	 *
+	 * @return Number of bytes written to 'out', or -1 if a code byte has two bit errors,
+	 *         the length is odd or the frame does not fit in 'out'.
+	 */
+	static int decode(byte[] received, int length, byte[] out) {
+		if (length % 2 != 0 || length / 2 > out.length)
+			return -1;
+
+		for (int i = 0; i < length / 2; i++) {
+			int high = DECODE[received[2 * i] & 0xFF];
+			int low = DECODE[received[2 * i + 1] & 0xFF];
+			if (high < 0 || low < 0)
+				return -1;
+			out[i] = (byte) (high << 4 | low);
+		}
+		return length / 2;
+	}
+
+	/*
+	 * Decodes the start of a frame still being received, stopping at a
+	 * code byte which cannot be corrected or once 'out' is full.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	static int decodePrefix(byte[] received, int length, byte[] out) {
+		int written = 0;
+		for (int i = 0; i + 1 < length && written < out.length; i += 2) {
+			int high = DECODE[received[i] & 0xFF];
+			int low = DECODE[received[i + 1] & 0xFF];
+			if (high < 0 || low < 0)
+				break;
+			out[written++] = (byte) (high << 4 | low);
+		}
+		return written;
+	}
+}
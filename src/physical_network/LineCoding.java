@@ -0,0 +1,188 @@
+package physical_network;
+
+import java.util.Arrays;
+
+/**
+ * Line codings a network card can use to put bytes on the wire.
+ * <p>
+ * A coding turns a byte into a sequence of symbols, each held on the wire
+ * for one pulse width. Symbol levels are given as a fraction of the high
+ * voltage, from -1 (low voltage) to 1 (high voltage). Codings with more
+ * levels carry more bits per pulse but leave less margin against noise.
+ */
+public enum LineCoding {
+
+	/*
+	 * Original coding: one bit per pulse, high for 1 and low for 0.
+	 */
+	NRZ(8, 2.0 / 3) {
+		void encode(int value, double[] symbols, double previous) {
+			for (int bit = 0; bit < 8; bit++)
+				symbols[bit] = ((value << bit) & 0x80) != 0 ? 1 : -1;
+		}
+
+		int decode(double[] samples, double previous) {
+			int value = 0;
+			for (int bit = 0; bit < 8; bit++)
+				value = (value << 1) | (samples[bit] > 0 ? 1 : 0);
+			return value;
+		}
+	},
+
+	/*
+	 * Four level pulse amplitude modulation: two Gray coded bits per pulse,
+	 * so adjacent levels only differ by one bit.
+	 */
+	PAM4(4, 1.0 / 6) {
+		private final double[] levels = {-1, -1.0 / 3, 1, 1.0 / 3};
+		private final int[] dibits = {0, 1, 3, 2};
+
+		void encode(int value, double[] symbols, double previous) {
+			for (int i = 0; i < 4; i++)
+				symbols[i] = levels[(value >> (6 - 2 * i)) & 0x3];
+		}
+
+		int decode(double[] samples, double previous) {
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				double sample = samples[i];
+				int level = (sample < -2.0 / 3) ? 0 : (sample < 0) ? 1 : (sample < 2.0 / 3) ? 2 : 3;
+				value = (value << 2) | dibits[level];
+			}
+			return value;
+		}
+
+		double nearestLevel(double sample) {
+			return (sample < -2.0 / 3) ? -1 : (sample < 0) ? -1.0 / 3 : (sample < 2.0 / 3) ? 1.0 / 3 : 1;
+		}
+	},
+
+	/*
+	 * IEEE 802.3 Manchester: each bit is two pulses with a transition in the
+	 * middle, low to high for 1 and high to low for 0. Halves the bit rate but
+	 * the signal carries its own clock and has no DC component.
+	 */
+	MANCHESTER(16, 2.0 / 3) {
+		void encode(int value, double[] symbols, double previous) {
+			for (int bit = 0; bit < 8; bit++) {
+				boolean one = ((value << bit) & 0x80) != 0;
+				symbols[2 * bit] = one ? -1 : 1;
+				symbols[2 * bit + 1] = one ? 1 : -1;
+			}
+		}
+
+		int decode(double[] samples, double previous) {
+			int value = 0;
+			for (int bit = 0; bit < 8; bit++)
+				value = (value << 1) | (samples[2 * bit + 1] > samples[2 * bit] ? 1 : 0);
+			return value;
+		}
+	},
+
+	/*
+	 * FDDI 4B5B block code sent NRZI (a 1 is a change of level). Every code
+	 * group has a transition at least every three pulses, so a whole frame is
+	 * sent as one run after a single preamble rather than byte by byte.
+	 */
+	FOUR_B_FIVE_B(10, 2.0 / 3) {
+		private final int[] codes = {
+				0x1E, 0x09, 0x14, 0x15, 0x0A, 0x0B, 0x0E, 0x0F,
+				0x12, 0x13, 0x16, 0x17, 0x1A, 0x1B, 0x1C, 0x1D};
+		private final int[] nibbles = new int[32];
+
+		{
+			Arrays.fill(nibbles, -1);
+			for (int i = 0; i < codes.length; i++)
+				nibbles[codes[i]] = i;
+		}
+
+		void encode(int value, double[] symbols, double previous) {
+			int group = codes[(value >> 4) & 0xF] << 5 | codes[value & 0xF];
+			double level = previous;
+			for (int i = 0; i < 10; i++) {
+				if (((group >> (9 - i)) & 1) != 0)
+					level = -level;
+				symbols[i] = level;
+			}
+		}
+
+		int decode(double[] samples, double previous) {
+			int group = 0;
+			boolean high = previous > 0;
+			for (int i = 0; i < 10; i++) {
+				boolean sample = samples[i] > 0;
+				group = (group << 1) | (sample != high ? 1 : 0);
+				high = sample;
+			}
+
+			int upper = nibbles[group >> 5];
+			int lower = nibbles[group & 0x1F];
+			if (upper < 0 || lower < 0)
+				return -1;
+			return upper << 4 | lower;
+		}
+	};
+
+	// Most symbols any coding uses for a byte.
+	static final int MAX_SYMBOLS_PER_BYTE = 16;
+
+	private final int symbolsPerByte;
+	private final double idleLevel;
+
+	LineCoding(int symbolsPerByte, double idleLevel) {
+		this.symbolsPerByte = symbolsPerByte;
+		this.idleLevel = idleLevel;
+	}
+
+	/*
+	 * Number of pulses it takes to send one byte.
+	 */
+	public int symbolsPerByte() {
+		return symbolsPerByte;
+	}
+
+	/*
+	 * Whether frames are sent as one continuous run of symbols after a single
+	 * preamble, instead of each byte having its own lead-in and start pulse.
+	 */
+	public boolean isBlockCode() {
+		return this == FOUR_B_FIVE_B;
+	}
+
+	/*
+	 * Largest level (as a fraction of the high voltage) that still reads
+	 * as a quiet wire rather than a symbol.
+	 */
+	double idleLevel() {
+		return idleLevel;
+	}
+
+	/*
+	 * Nearest symbol level to a sampled level.
+	 */
+	double nearestLevel(double sample) {
+		return (sample > 0) ? 1 : -1;
+	}
+
+	/*
+	 * Nearest symbol level to a sampled level, or 0 if it reads as a quiet wire.
+	 */
+	double symbolLevel(double sample) {
+		return (Math.abs(sample) < idleLevel) ? 0 : nearestLevel(sample);
+	}
+
+	/*
+	 * Writes the symbol levels for a byte into 'symbols'.
+	 *
+	 * @param previous Level of the symbol sent just before this byte.
+	 */
+	abstract void encode(int value, double[] symbols, double previous);
+
+	/*
+	 * Decodes a byte from the levels sampled in the middle of each symbol.
+	 *
+	 * @param previous Level sampled for the symbol just before this byte.
+	 * @return The byte (0 - 255), or -1 if the symbols are not a valid code.
+	 */
+	abstract int decode(double[] samples, double previous);
+}
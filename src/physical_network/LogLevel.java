@@ -0,0 +1,27 @@
+package physical_network;
+
+/**
+ * Levels of detail for EventLog, from the least to the most detailed.
+ */
+public enum LogLevel {
+
+	/*
+	 * A device has stopped working properly, e.g. given up sending a frame.
+	 */
+	WARN,
+
+	/*
+	 * Devices starting and stopping.
+	 */
+	INFO,
+
+	/*
+	 * Every frame and acknowledgement sent or received, collision and retransmission.
+	 */
+	DEBUG,
+
+	/*
+	 * Every byte received.
+	 */
+	TRACE
+}
@@ -30,27 +30,35 @@ public class Main {
 	/**
 	 * @param args the command line arguments
 	 */
-	public static void main(String[] args) throws InterruptedException {
+	public static void main(String[] args) throws Exception {
+
+		// Simulation runs in virtual time unless real-time pacing is asked for
+		// (run with -Drealtime=true to watch the oscilloscope at wall clock speed).
+		SimulationClock clock = Boolean.getBoolean("realtime") ? new RealTimeClock() : new VirtualClock();
 
 		// Shared twisted pair wire.
 		TwistedWirePair wire = new MyTwistedWirePair();
 
 		// Set network card 1 running connected to the shared wire.
-		NetworkCard networkCard1 = new NetworkCard(1, wire);
+		NetworkCard networkCard1 = new NetworkCard(1, wire, clock);
 		networkCard1.init();
 
 		// Set network card 2 running with a simple data frame listener registered.
-		NetworkCard networkCard2 = new NetworkCard(2, wire);
+		NetworkCard networkCard2 = new NetworkCard(2, wire, clock);
 		networkCard2.init();
 
+		// Card counters and latencies can be watched in JConsole or VisualVM.
+		networkCard1.registerMBean();
+		networkCard2.registerMBean();
+
 		// Currently noise level is set to 0.0 volts on wire (the 0.0 value).
 		// Try increasing it to 3.5 volts to see if the transmission is reliable.
-		ThermalNoise thermalNoise = new ThermalNoise("Thermal Noise", 0, wire);
-		thermalNoise.start();
+		ThermalNoise thermalNoise = new ThermalNoise("Thermal Noise", 0, wire, clock);
+		clock.start(thermalNoise);
 
 		// Set oscilloscope monitoring the wire voltage.
-		Oscilloscope oscilloscope = new Oscilloscope("Oscilloscope", wire);
-		oscilloscope.start();
+		Oscilloscope oscilloscope = new Oscilloscope("Oscilloscope", wire, clock);
+		clock.start(oscilloscope);
 
 		// Send a data frame across the link from network card 1 to network card 2.
 //        DataFrame myMessage = new DataFrame("Hello World", 2);
@@ -73,6 +81,7 @@ public class Main {
 
 			DataFrame receivedData = networkCard2.receive();
 			System.out.println("\n *** RECEIVED: " + receivedData + "\n");
+			receivedData.release();
 
 		}
 
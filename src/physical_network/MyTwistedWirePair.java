@@ -7,7 +7,12 @@
 
 package physical_network;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * 
@@ -25,32 +30,173 @@ import java.util.HashMap;
  * Similarly any number of network cards may be attached to the wire and
  * each be setting voltages ... the wire should add all these voltages together.
  * 
+ * Each device connected to the wire is given a slot holding its current voltage.
+ * Setting a voltage swaps the slot value and adds the difference to the running
+ * total, so updates are O(1) and lock-free and reading the wire never blocks.
+ * Only while a trace is being recorded do updates take the recorder's lock.
+ * Voltages are held in fixed point so that the total never drifts however many
+ * updates are applied.
+ * 
+ * A WireTraceRecorder can be attached to capture the run for later replay.
+ * 
  * @author K. Bryson
  */
 class MyTwistedWirePair implements TwistedWirePair {
-	
-    private double voltage = 0.0;
-    private HashMap<String, Double> currentVoltages = new HashMap<String, Double>();
 
-    public synchronized void setVoltage(String device, double voltage) {
-        currentVoltages.put(device, voltage);
-        updateWireVoltage();
+    // Fixed point scale for voltages (exact for the usual 2.5 volt levels).
+    private static final double SCALE = 1L << 32;
+
+    // Default maximum number of devices which can connect to the wire.
+    private static final int MAX_DEVICES = 256;
+
+    private final AtomicLong voltage = new AtomicLong();
+    private final AtomicLongArray currentVoltages;
+    private final AtomicInteger connectedDevices = new AtomicInteger();
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+
+    // Copied on write so notifying listeners never locks or allocates.
+    private volatile VoltageListener[] listeners = new VoltageListener[0];
+
+    // Records voltage changes when a trace of the run is wanted.
+    private volatile WireTraceRecorder recorder;
+
+    public MyTwistedWirePair() {
+        this(MAX_DEVICES);
+    }
+
+    /**
+     * @param maxDevices Maximum number of devices which can connect to the wire.
+     */
+    public MyTwistedWirePair(int maxDevices) {
+        currentVoltages = new AtomicLongArray(maxDevices);
+    }
+
+    public void setVoltage(String device, double voltage) {
+        setVoltage(slot(device), voltage);
+    }
+
+    public double getVoltage(String device) {
+        return getVoltage();
+    }
+
+    @Override
+    public WireConnection connect(String device) {
+        return new SlotConnection(device, slot(device));
+    }
+
+    /**
+     * Records every voltage change on the wire from now on (null to stop recording).
+     * 
+     * @param recorder Recorder to write the trace to.
+     */
+    public synchronized void setTraceRecorder(WireTraceRecorder recorder) {
+        if (recorder != null) {
+            for (Map.Entry<String, Integer> device : slots.entrySet())
+                recorder.deviceConnected(device.getValue(), device.getKey());
+        }
+        this.recorder = recorder;
+    }
+
+    @Override
+    public synchronized boolean addVoltageListener(VoltageListener listener) {
+        VoltageListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+        return true;
+    }
+
+    @Override
+    public synchronized void removeVoltageListener(VoltageListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                VoltageListener[] updated = new VoltageListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, updated, 0, i);
+                System.arraycopy(listeners, i + 1, updated, i, updated.length - i);
+                listeners = updated;
+                return;
+            }
+        }
     }
 
     /*
-     * Update current voltage on the wire.
+     * Slot of a device, allocating one the first time the device is seen.
      */
-    private void updateWireVoltage(){
-    	
-        voltage = 0.0;
+    private int slot(String device) {
+        Integer slot = slots.get(device);
+        if (slot == null) {
+            slot = slots.computeIfAbsent(device, name -> {
+                int next = connectedDevices.getAndIncrement();
+                if (next >= currentVoltages.length())
+                    throw new IllegalStateException("Too many devices connected to the wire: " + name);
+                WireTraceRecorder recorder = this.recorder;
+                if (recorder != null)
+                    recorder.deviceConnected(next, name);
+                return next;
+            });
+        }
+        return slot;
+    }
 
-        // Add all the currently set voltages together.
-        for (double currentVoltage: currentVoltages.values()) {
-        	voltage += currentVoltage;        	
+    /*
+     * Update current voltage on the wire by the change in one device's voltage
+     * and tell any listeners.
+     */
+    private void setVoltage(int slot, double voltage) {
+        long fixed = Math.round(voltage * SCALE);
+        long previous;
+        long total;
+
+        // While recording, the change is made and recorded under the recorder's lock
+        // so records are written in the order the total changed, with times in order.
+        WireTraceRecorder recorder = this.recorder;
+        if (recorder == null) {
+            previous = currentVoltages.getAndSet(slot, fixed);
+            if (fixed == previous)
+                return;
+            total = this.voltage.addAndGet(fixed - previous);
+        } else {
+            synchronized (recorder) {
+                previous = currentVoltages.getAndSet(slot, fixed);
+                if (fixed == previous)
+                    return;
+                total = this.voltage.addAndGet(fixed - previous);
+                recorder.voltageSet(slot, fixed / SCALE, total / SCALE);
+            }
         }
+
+        VoltageListener[] listeners = this.listeners;
+        if (listeners.length > 0) {
+            double before = (total - fixed + previous) / SCALE;
+            double after = total / SCALE;
+            for (VoltageListener listener : listeners)
+                listener.voltageChanged(before, after);
+        }
+    }
+
+    private double getVoltage() {
+        return voltage.get() / SCALE;
     }
-        
-    public synchronized double getVoltage(String device) {
-        return voltage;
+
+    /*
+     * Connection which goes straight to the device's slot.
+     */
+    private class SlotConnection extends WireConnection {
+
+        private final int slot;
+
+        SlotConnection(String device, int slot) {
+            super(MyTwistedWirePair.this, device);
+            this.slot = slot;
+        }
+
+        @Override
+        public void setVoltage(double voltage) {
+            MyTwistedWirePair.this.setVoltage(slot, voltage);
+        }
+
+        @Override
+        public double getVoltage() {
+            return MyTwistedWirePair.this.getVoltage();
+        }
     }
 }
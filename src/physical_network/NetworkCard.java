@@ -8,8 +8,17 @@
 
 package physical_network;
 
-import java.util.Arrays;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Random;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 
 /**
@@ -24,8 +33,11 @@ import java.util.concurrent.*;
 
 public class NetworkCard {
 
-	// Wire pair that the network card is attached to.
-	private final TwistedWirePair wire;
+	// Connection to the wire pair that the network card is attached to.
+	private final WireConnection wire;
+
+	// Clock that all signalling on the wire is timed against.
+	private final SimulationClock clock;
 
 	// Unique device number and name given to the network card.
 	private final int deviceNumber;
@@ -35,352 +47,1950 @@ public class NetworkCard {
 	private final double HIGH_VOLTAGE = 2.5;
 	private final double LOW_VOLTAGE = -2.5;
 
+	// Voltages a receiver must see to detect a high or low pulse.
+	private final double UPPER_THRESHOLD_VOLTAGE = HIGH_VOLTAGE + LOW_VOLTAGE / 3;
+	private final double LOWER_THRESHOLD_VOLTAGE = LOW_VOLTAGE + HIGH_VOLTAGE / 3;
+
 	// Default value for a signal pulse width that should be used in milliseconds.
 	private final int PULSE_WIDTH = 200;
 
 	// Default value for maximum payload size in bytes.
-	private final int MAX_PAYLOAD_SIZE = 1500;
+	private final int MAX_PAYLOAD_SIZE = DataFrame.MAX_PAYLOAD_SIZE;
 
 	// Default value for input & output queue sizes.
 	private final int QUEUE_SIZE = 5;
 
-	private final int TIMEOUT = 10000;
+	// Retransmission timeout before a round trip time has been measured, and
+	// the limits the measured timeout is kept within.
+	private int initialTimeout = 10000;
+	private final int MIN_TIMEOUT = PULSE_WIDTH * 5;
+	private int maxTimeout = initialTimeout * 6;
+
+	// Time the wire must be quiet before a data frame is sent, giving way to acknowledgements.
+	private final int INTER_FRAME_GAP = PULSE_WIDTH * 2;
+
+	// Time an acknowledgement waits for a data frame to piggyback on before it is sent on its own.
+	// Shorter than the inter-frame gap, so it still goes out before the other end sends again.
+	private final int ACK_DELAY = PULSE_WIDTH;
+
+	// Time the wire must be quiet before an acknowledgement is sent on its own.
+	private final int ACK_GAP = PULSE_WIDTH / 10;
+
+	// Time another card's signal takes to reach this one. Cards which start sending within
+	// it of each other cannot sense each other's carrier, so their frames collide.
+	private final int PROPAGATION_DELAY = PULSE_WIDTH / 10;
+
+	// Difference between the voltage a card drives and the wire voltage which means
+	// another card is transmitting too. Seen on two pulses running it is a collision.
+	private final double COLLISION_VOLTAGE = HIGH_VOLTAGE * 2 / 3;
+
+	// Pulses the wire is held low after a collision, so every card involved notices it.
+	private final int JAM_PULSES = 4;
+
+	// Binary exponential backoff: after n collisions a frame waits a random number of
+	// slots below 2^n (n capped at 10), and is given up on after 16 collisions.
+	private final int SLOT_TIME = PULSE_WIDTH;
+	private final int MAX_BACKOFF_EXPONENT = 10;
+	private final int MAX_COLLISIONS = 16;
+
+	// Longest gap between the bytes of an asynchronous frame, normally a four pulse lead-in.
+	// A longer gap means the frame was cut short, so the bytes already received are dropped.
+	private final int MAX_BYTE_GAP = PULSE_WIDTH * 6;
+
+	// Frames a bridge port can have waiting to be sent on before it drops them.
+	private final int FORWARD_QUEUE_SIZE = 16;
 
-	private int framesSent = 0;
+	// Longest a bridge port cutting a frame through waits for its next byte to
+	// arrive, well over the time a byte takes in any line coding.
+	private final int FORWARD_TIMEOUT = PULSE_WIDTH * 40;
 
-	private int framesReceived = 0;
+	// Most samples an oversampling receiver takes across a pulse (one a millisecond).
+	private final int MAX_SAMPLES_PER_PULSE = PULSE_WIDTH;
+
+	// Frame numbers are carried in two bytes and wrap around. Each pair of
+	// devices numbers the frames between them separately.
+	private static final int SEQUENCE_SPACE = DataFrame.SEQUENCE_SPACE;
+
+	// Device numbers are one byte, so per-device tables have an entry for each value.
+	private static final int DEVICES = 256;
+
+	// Sliding window protocol and window size (defaults to Stop & Wait).
+	private ArqMode arqMode = ArqMode.GO_BACK_N;
+	private int windowSize = 1;
+
+	// Check used to detect corrupted frames.
+	private IntegrityCheck integrityCheck = IntegrityCheck.SUM;
+
+	// How bytes are turned into pulses on the wire.
+	private LineCoding lineCoding = LineCoding.NRZ;
+
+	// Whether frames are clocked out as one run after a sync word rather than byte by byte.
+	private boolean synchronous = false;
+
+	// Pattern starting a synchronous frame: alternating pulses to lock on to, then two highs.
+	private static final int SYNC_WORD = 0xAB;
+
+	// How flag bytes are kept out of the contents of a frame.
+	private Framing framing = Framing.BYTE_STUFFING;
+
+	// Code added to frames so receivers can correct bit errors.
+	private ErrorCorrection errorCorrection = ErrorCorrection.NONE;
+
+	// How the receiver decides each symbol's level, from how many samples across its pulse.
+	private BitDecision bitDecision = BitDecision.MID_PULSE;
+	private int samplesPerPulse = 1;
 
 	// Output queue for dataframes being transmitted.
 	private LinkedBlockingQueue<DataFrame> outputQueue = new LinkedBlockingQueue<DataFrame>(QUEUE_SIZE);
 
-	// Input queue for dataframes being received.
-	private LinkedBlockingQueue<DataFrame> inputQueue = new LinkedBlockingQueue<DataFrame>(QUEUE_SIZE);
+	// Frames queued by sendAsync(), which does not wait for room in the output queue.
+	private ConcurrentLinkedQueue<DataFrame> asyncQueue = new ConcurrentLinkedQueue<DataFrame>();
+
+	// Whether the transmitter has stopped, after being interrupted.
+	private volatile boolean stopped = false;
+
+	// Input queue for dataframes being received.
+	private LinkedBlockingQueue<DataFrame> inputQueue = new LinkedBlockingQueue<DataFrame>(QUEUE_SIZE);
+
+	// Frames from devices an input channel is open for, indexed by device number (null for none).
+	private final AtomicReferenceArray<LinkedBlockingQueue<DataFrame>> streams = new AtomicReferenceArray<LinkedBlockingQueue<DataFrame>>(DEVICES);
+
+	// Acknowledgements waiting to be sent by the transmitter.
+	private LinkedBlockingQueue<DataFrame> ackQueue = new LinkedBlockingQueue<DataFrame>();
+
+	// Frame numbers acknowledged by other devices, waiting to be processed by the transmitter,
+	// each with the acknowledging device's number in the bits above the frame number.
+	private LinkedBlockingQueue<Integer> receivedAcks = new LinkedBlockingQueue<Integer>();
+
+	// Transmitter and receiver threads. They are virtual threads, so a process can
+	// run many thousands of cards without an operating system thread for each.
+	private final Thread txThread;
+	private final Thread rxThread;
+
+	// Whether the wire notifies voltage changes, and if the receiver is parked waiting for one.
+	private final boolean edgeNotification;
+	private volatile boolean awaitingEdge = false;
+
+	// Time the wire last crossed a threshold voltage, used to track the transmitter's clock.
+	private volatile long lastEdgeTime = -1;
+
+	// Time a signal last appeared on a quiet wire, used to sense carrier.
+	private volatile long carrierStart = -1;
+
+	// Bridge this card is a port of (null for a host) and its port number.
+	private Bridge bridge;
+	private int port;
+
+	// Frames the bridge has queued for this port to send on.
+	private LinkedBlockingQueue<ForwardedFrame> forwardQueue = new LinkedBlockingQueue<ForwardedFrame>(FORWARD_QUEUE_SIZE);
+
+	// Subscription of the subscriber taking received frames from receivePublisher() (null if none).
+	private final AtomicReference<FrameSubscription> subscription = new AtomicReference<FrameSubscription>();
+
+	// Whether the transmitter is sending a frame on, so a port does not pass its own frames back.
+	private volatile boolean transmitting = false;
+
+	// Transmissions of a data frame before it is given up on.
+	private static final int MAX_TRANSMISSIONS = 5;
+
+	// Counters and latency histograms, which can be watched over JMX.
+	private final CardMetrics metrics;
+
+	/*
+	 * NetworkCard constructor.
+	 *
+	 * @param deviceName This provides the name of this device, i.e. "Network Card A".
+	 * @param wire       This is the shared wire that this network card is connected to.
+	 * @param listener   A data frame listener that should be informed when data frames are received.
+	 *                   (May be set to 'null' if network card should not respond to data frames.)
+	 */
+	public NetworkCard(int number, TwistedWirePair wire) {
+		this(number, wire, new RealTimeClock());
+	}
+
+	/*
+	 * NetworkCard constructor.
+	 *
+	 * @param number This provides the device number of this network card (0 - 255).
+	 * @param wire   This is the shared wire that this network card is connected to.
+	 * @param clock  This is the clock the network card times its signalling against.
+	 */
+	public NetworkCard(int number, TwistedWirePair wire, SimulationClock clock) {
+		this(number, "NetCard" + number, wire, clock);
+	}
+
+	/*
+	 * Constructor for a bridge port, which is named after its bridge and
+	 * has no device number of its own.
+	 */
+	NetworkCard(String deviceName, TwistedWirePair wire, SimulationClock clock) {
+		this(0, deviceName, wire, clock);
+	}
+
+	private NetworkCard(int number, String deviceName, TwistedWirePair wire, SimulationClock clock) {
+
+		if (number < 0 || number >= DEVICES)
+			throw new IllegalArgumentException("Device number must be between 0 and " + (DEVICES - 1));
+
+		this.deviceNumber = number;
+		this.deviceName = deviceName;
+		this.wire = wire.connect(deviceName);
+		this.clock = clock;
+		this.metrics = new CardMetrics(clock, () -> outputQueue.size() + asyncQueue.size(), inputQueue::size,
+				ackQueue::size, forwardQueue::size);
+
+		txThread = Thread.ofVirtual().name(deviceName + " TX").unstarted(this.new TXThread());
+		rxThread = Thread.ofVirtual().name(deviceName + " RX").unstarted(this.new RXThread());
+
+		edgeNotification = wire.addVoltageListener(this::voltageChanged);
+	}
+
+	/*
+	 * Notes when the wire crosses one of the threshold voltages and wakes the
+	 * receiver if it is waiting for it. Other voltage changes cost nothing.
+	 */
+	private void voltageChanged(double previous, double current) {
+		if (thresholdBand(previous) != thresholdBand(current)) {
+			lastEdgeTime = clock.now();
+			if (awaitingEdge)
+				clock.signal(wire);
+		}
+		if (isQuiet(previous) && !isQuiet(current))
+			carrierStart = clock.now();
+	}
+
+	private int thresholdBand(double voltage) {
+		if (voltage <= LOWER_THRESHOLD_VOLTAGE)
+			return -1;
+		return (voltage < UPPER_THRESHOLD_VOLTAGE) ? 0 : 1;
+	}
+
+	private boolean isQuiet(double voltage) {
+		return Math.abs(voltage) < lineCoding.idleLevel() * HIGH_VOLTAGE;
+	}
+
+	/*
+	 * Selects the ARQ protocol and window size. Must be called before init()
+	 * and configured the same way on both ends of a link.
+	 *
+	 * @param mode       Go-Back-N or Selective Repeat.
+	 * @param windowSize Number of frames that may be unacknowledged at once.
+	 */
+	public void setArq(ArqMode mode, int windowSize) {
+		int maxWindow = (mode == ArqMode.SELECTIVE_REPEAT) ? SEQUENCE_SPACE / 2 : SEQUENCE_SPACE - 1;
+		if (windowSize < 1 || windowSize > maxWindow)
+			throw new IllegalArgumentException("Window size for " + mode + " must be between 1 and " + maxWindow);
+
+		this.arqMode = mode;
+		this.windowSize = windowSize;
+	}
+
+	/*
+	 * Sets the retransmission timeout used before a round trip time has been
+	 * measured. Frames crossing bridges take much longer to be acknowledged than
+	 * on one wire, so links through them need a longer timeout to start with.
+	 * Backing off is limited to six times this timeout. Must be called before init().
+	 */
+	public void setInitialTimeout(int millis) {
+		if (millis < MIN_TIMEOUT)
+			throw new IllegalArgumentException("Initial timeout must be at least " + MIN_TIMEOUT + " ms");
+
+		this.initialTimeout = millis;
+		this.maxTimeout = millis * 6;
+	}
+
+	/*
+	 * Selects how corrupted frames are detected. Must be called before init()
+	 * and configured the same way on both ends of a link.
+	 */
+	public void setIntegrityCheck(IntegrityCheck integrityCheck) {
+		this.integrityCheck = integrityCheck;
+	}
+
+	/*
+	 * Selects how bytes are coded on the wire. Must be called before init()
+	 * and configured the same way on both ends of a link.
+	 */
+	public void setLineCoding(LineCoding lineCoding) {
+		this.lineCoding = lineCoding;
+	}
+
+	/*
+	 * Selects how flag bytes are kept out of frames. Must be called before init()
+	 * and configured the same way on both ends of a link.
+	 */
+	public void setFraming(Framing framing) {
+		this.framing = framing;
+	}
+
+	/*
+	 * Selects forward error correction. Must be called before init() and configured
+	 * the same way on both ends of a link (and on the ports of bridges between them).
+	 */
+	public void setErrorCorrection(ErrorCorrection errorCorrection) {
+		this.errorCorrection = errorCorrection;
+	}
+
+	/*
+	 * Selects how the receiver decides the level of each symbol. MID_PULSE takes
+	 * one sample, the others take several spread evenly across the pulse and
+	 * keep in step with the transmitter's clock from where its edges fall among
+	 * them. Only affects this card's receiver. Must be called before init().
+	 *
+	 * @param samplesPerPulse 1 for MID_PULSE, or from 2 up to one a millisecond for the others.
+	 */
+	public void setBitDecision(BitDecision decision, int samplesPerPulse) {
+		if (decision == BitDecision.MID_PULSE ? samplesPerPulse != 1
+				: samplesPerPulse < 2 || samplesPerPulse > MAX_SAMPLES_PER_PULSE)
+			throw new IllegalArgumentException(decision + " cannot take " + samplesPerPulse + " samples per pulse");
+
+		this.bitDecision = decision;
+		this.samplesPerPulse = samplesPerPulse;
+	}
+
+	/*
+	 * Selects synchronous framing: each frame is a sync word followed by every
+	 * byte clocked out back to back, with no lead-in or start pulse per byte.
+	 * Must be called before init() and configured the same way on both ends of a link.
+	 */
+	public void setSynchronous(boolean synchronous) {
+		this.synchronous = synchronous;
+	}
+
+	/*
+	 * Makes this card a port of a bridge: rather than taking frames addressed to
+	 * it, it passes every frame it receives to the bridge and sends on the frames
+	 * the bridge queues for it. Must be called before init().
+	 */
+	void setBridge(Bridge bridge, int port) {
+		this.bridge = bridge;
+		this.port = port;
+	}
+
+	/*
+	 * Queues a frame for this bridge port to send on.
+	 *
+	 * @return false if the queue is full and the frame was not taken.
+	 */
+	boolean forward(ForwardedFrame frame) {
+		if (!forwardQueue.offer(frame))
+			return false;
+		clock.signal(this);
+		return true;
+	}
+
+	/*
+	 * Whether the bytes of a frame follow each other without their own start pulses.
+	 */
+	private boolean continuous() {
+		return synchronous || lineCoding.isBlockCode();
+	}
+
+	/*
+	 * Initialize the network card.
+	 */
+	public void init() {
+		clock.start(txThread);
+		clock.start(rxThread);
+	}
+
+	/*
+	 * Stop the network card. Frames still queued or waiting to be acknowledged are not delivered.
+	 */
+	public void shutdown() {
+		txThread.interrupt();
+		rxThread.interrupt();
+	}
+
+
+	/*
+	 * Counters and latency histograms for this card.
+	 */
+	public CardMetrics getMetrics() {
+		return metrics;
+	}
+
+	/*
+	 * Registers this card's metrics with the platform MBean server, named after
+	 * the card, so they can be watched in JConsole or VisualVM during a run.
+	 *
+	 * @return Name the metrics were registered under.
+	 */
+	public ObjectName registerMBean() throws JMException {
+		ObjectName name = new ObjectName("physical_network:type=NetworkCard,name=" + ObjectName.quote(deviceName));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+		return name;
+	}
+
+	/*
+	 * Queues a data frame to be sent, waiting while the output queue is full.
+	 * Payloads longer than MAX_PAYLOAD_SIZE do not fit in a frame, so are
+	 * rejected; send them through openOutputChannel() instead.
+	 */
+	public void send(DataFrame data) throws InterruptedException {
+		if (data.getPayloadLength() > MAX_PAYLOAD_SIZE)
+			throw new IllegalArgumentException("Payload of " + data.getPayloadLength()
+					+ " bytes is longer than " + MAX_PAYLOAD_SIZE);
+
+		data.setQueuedTime(clock.now());
+		data.setSource(deviceNumber);
+		data.setIntegrityCheck(integrityCheck);
+		put(outputQueue, data);
+	}
+
+	/*
+	 * Queues a data frame to be sent without waiting.
+	 * <p>
+	 * The returned future is completed with a receipt when the frame is
+	 * acknowledged, or when it is given up on after too many transmissions or
+	 * the card stops sending. It is completed on the card's transmitter thread,
+	 * so actions attached to it must not block (sendAsync() may be called from
+	 * them); attach blocking actions with an executor. Frames wait in an
+	 * unbounded queue, so callers limit how many they send ahead by how many
+	 * futures they leave outstanding.
+	 */
+	public CompletableFuture<DeliveryReceipt> sendAsync(DataFrame data) {
+		if (data.getPayloadLength() > MAX_PAYLOAD_SIZE)
+			throw new IllegalArgumentException("Payload of " + data.getPayloadLength()
+					+ " bytes is longer than " + MAX_PAYLOAD_SIZE);
+
+		CompletableFuture<DeliveryReceipt> receipt = new CompletableFuture<DeliveryReceipt>();
+		data.setQueuedTime(clock.now());
+		data.setSource(deviceNumber);
+		data.setIntegrityCheck(integrityCheck);
+		data.setReceipt(receipt);
+		asyncQueue.offer(data);
+
+		// The transmitter may have stopped before seeing the frame.
+		if (stopped)
+			failQueued();
+		else
+			clock.signal(this);
+		return receipt;
+	}
+
+	/*
+	 * Completes the receipt of a frame sent with sendAsync().
+	 */
+	private void complete(DataFrame frame, int frameNumber, boolean delivered, int transmissions) {
+		CompletableFuture<DeliveryReceipt> receipt = frame.getReceipt();
+		if (receipt != null) {
+			frame.setReceipt(null);
+			receipt.complete(new DeliveryReceipt(frame.getDestination(), frameNumber, delivered, transmissions,
+					frame.getQueuedTime(), clock.now()));
+			clock.signal(this);
+		}
+	}
+
+	/*
+	 * Waits until a frame sent with sendAsync() is acknowledged or given up on.
+	 */
+	void await(CompletableFuture<DeliveryReceipt> receipt) throws InterruptedException {
+		clock.waitFor(this, receipt::isDone, 0);
+	}
+
+	/*
+	 * Number of frames a sender can have unacknowledged and still keep the
+	 * window full: those in flight and as many again as the output queue holds.
+	 */
+	int sendAhead() {
+		return windowSize + QUEUE_SIZE;
+	}
+
+	/*
+	 * Gives up on the frames sent with sendAsync() still waiting to be sent.
+	 */
+	private void failQueued() {
+		DataFrame frame;
+		while ((frame = asyncQueue.poll()) != null)
+			complete(frame, -1, false, 0);
+	}
+
+	/*
+	 * Publisher of the data frames this card receives, for callers which handle
+	 * frames as they arrive rather than waiting in receive().
+	 * <p>
+	 * One subscriber at a time is given frames, as many as it has requested, on
+	 * the card's receiver thread or the thread calling request(), so onNext()
+	 * must not block. Frames not yet requested wait in the input queue, and the
+	 * receiver waits once it is full, so a slow subscriber holds back the sender
+	 * rather than frames being buffered. A subscriber can release() each frame
+	 * once it has read it. Frames are taken from the same queue as receive(),
+	 * so the two should not be used together.
+	 */
+	public Flow.Publisher<DataFrame> receivePublisher() {
+		return this::subscribe;
+	}
+
+	private void subscribe(Flow.Subscriber<? super DataFrame> subscriber) {
+		Objects.requireNonNull(subscriber);
+
+		FrameSubscription created = new FrameSubscription(subscriber);
+		if (!subscription.compareAndSet(null, created)) {
+			created.cancelled = true;
+			subscriber.onSubscribe(created);
+			subscriber.onError(new IllegalStateException(deviceName + " already has a subscriber"));
+			return;
+		}
+		subscriber.onSubscribe(created);
+	}
+
+	/*
+	 * Takes the next received data frame. The frame can be release()d
+	 * once it has been read so that its buffer is reused.
+	 */
+	public DataFrame receive() throws InterruptedException {
+		DataFrame data = take(inputQueue);
+		return data;
+	}
+
+	/*
+	 * Opens a channel which sends the bytes written to it to a device, split
+	 * into frames of MAX_PAYLOAD_SIZE bytes. Closing it sends the last frame.
+	 */
+	public SegmentingChannel openOutputChannel(int destination) {
+		return new SegmentingChannel(this, destination, MAX_PAYLOAD_SIZE);
+	}
+
+	/*
+	 * Opens a channel which sends the bytes written to it to a device, split
+	 * into frames of up to segmentSize bytes.
+	 */
+	public SegmentingChannel openOutputChannel(int destination, int segmentSize) {
+		if (segmentSize < 1 || segmentSize > MAX_PAYLOAD_SIZE)
+			throw new IllegalArgumentException("Segment size must be between 1 and " + MAX_PAYLOAD_SIZE);
+		return new SegmentingChannel(this, destination, segmentSize);
+	}
+
+	/*
+	 * Opens a channel which reads the payloads of the frames this card receives
+	 * from a device as one stream, ending after the last frame of a stream sent
+	 * through an output channel. Until it is closed, frames from that device go
+	 * to the channel rather than receive(). Only one channel can be open for
+	 * each device.
+	 */
+	public ReassemblingChannel openInputChannel(int source) {
+		if (source < 0 || source >= DEVICES)
+			throw new IllegalArgumentException("Device number must be between 0 and " + (DEVICES - 1));
+		if (!streams.compareAndSet(source, null, new LinkedBlockingQueue<DataFrame>(QUEUE_SIZE)))
+			throw new IllegalStateException("An input channel is already open for device " + source);
+		return new ReassemblingChannel(this, source);
+	}
+
+	/*
+	 * Takes the next frame from a device an input channel is open for.
+	 */
+	DataFrame receive(int source) throws InterruptedException {
+		return take(streams.get(source));
+	}
+
+	/*
+	 * Closes the input channel for a device, releasing the frames it has not
+	 * read. Later frames from the device go to receive() again.
+	 */
+	void closeInputChannel(int source) {
+		LinkedBlockingQueue<DataFrame> stream = streams.getAndSet(source, null);
+		DataFrame frame;
+		while ((frame = stream.poll()) != null)
+			frame.release();
+		clock.signal(this);
+	}
+
+	/*
+	 * Logs an event for this card. Calls of DEBUG and TRACE events are
+	 * guarded by their EventLog flag, so they cost nothing when turned off.
+	 */
+	private void log(CardEvent event, long value) {
+		EventLog.log(event, deviceName, clock.now(), value);
+	}
+
+	/*
+	 * Blocking queue operations timed against the clock rather than
+	 * blocking the calling thread directly. They wait on this card's channel,
+	 * so cards sharing a clock do not wake each other.
+	 */
+	private <T> void put(LinkedBlockingQueue<T> queue, T item) throws InterruptedException {
+		while (!queue.offer(item))
+			clock.waitFor(this, () -> queue.remainingCapacity() > 0, 0);
+		clock.signal(this);
+	}
+
+	private <T> T take(LinkedBlockingQueue<T> queue) throws InterruptedException {
+		T item;
+		while ((item = queue.poll()) == null)
+			clock.waitFor(this, () -> !queue.isEmpty(), 0);
+		clock.signal(this);
+		return item;
+	}
+
+
+	/*
+	 * Number of frame numbers from 'from' forwards to 'to', allowing for wrap around.
+	 */
+	private static int distance(int from, int to) {
+		return (to - from + SEQUENCE_SPACE) % SEQUENCE_SPACE;
+	}
+
+	/*
+	 * Subscription to the frames received by this card. Frames are passed on
+	 * by drain(), which any thread may call; only one thread runs it at a time
+	 * and it runs again if called meanwhile, so onNext() calls never overlap.
+	 */
+	private class FrameSubscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super DataFrame> subscriber;
+
+		// Frames requested and not yet passed on (Long.MAX_VALUE for no limit).
+		private final AtomicLong demand = new AtomicLong();
+
+		// Number of calls of drain() not yet handled by the thread running it.
+		private final AtomicInteger drainCalls = new AtomicInteger();
+
+		private volatile boolean cancelled = false;
+
+		FrameSubscription(Flow.Subscriber<? super DataFrame> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			if (cancelled)
+				return;
+			if (n <= 0) {
+				cancel();
+				subscriber.onError(new IllegalArgumentException("Requested " + n + " frames"));
+				return;
+			}
+
+			demand.getAndUpdate(requested -> (requested + n < 0) ? Long.MAX_VALUE : requested + n);
+			drain();
+		}
+
+		public void cancel() {
+			cancelled = true;
+			subscription.compareAndSet(this, null);
+		}
+
+		/*
+		 * Passes on as many waiting frames as have been requested. Taking a
+		 * frame makes room in the input queue, so the receiver is signalled.
+		 */
+		void drain() {
+			if (drainCalls.getAndIncrement() != 0)
+				return;
+
+			do {
+				DataFrame frame;
+				while (!cancelled && demand.get() > 0 && (frame = inputQueue.poll()) != null) {
+					clock.signal(NetworkCard.this);
+					if (demand.get() != Long.MAX_VALUE)
+						demand.decrementAndGet();
+					subscriber.onNext(frame);
+				}
+			} while (drainCalls.decrementAndGet() != 0);
+		}
+	}
+
+	/*
+	 * Sequencing state for the frames sent to one device: the last frame number
+	 * sent to it, the window of frames it has not acknowledged and its
+	 * retransmission timer. Frames in the window have consecutive numbers, so
+	 * they are kept in arrays big enough for a window, indexed by frame number.
+	 */
+	private class SendSequence {
+
+		final RetransmissionTimer timer = new RetransmissionTimer(initialTimeout, MIN_TIMEOUT, maxTimeout);
+
+		int framesSent = 0;
+
+		// Oldest unacknowledged frame number and number of frames in flight.
+		int base = 1;
+		int outstanding = 0;
+
+		// Frame number marked so the receiver skips frames given up on before it (-1 for none).
+		int syncFrame = -1;
+
+		// Frames sent but not yet acknowledged, when they were last sent and how many times.
+		private final int mask = Integer.highestOneBit(windowSize * 2 - 1) - 1;
+		private final DataFrame[] window = new DataFrame[mask + 1];
+		private final long[] sentTime = new long[mask + 1];
+		private final int[] sendAttempts = new int[mask + 1];
+
+		DataFrame frame(int frameNumber) {
+			return window[frameNumber & mask];
+		}
+
+		void setFrame(int frameNumber, DataFrame frame) {
+			window[frameNumber & mask] = frame;
+		}
+
+		long sentTime(int frameNumber) {
+			return sentTime[frameNumber & mask];
+		}
+
+		int sendAttempts(int frameNumber) {
+			return sendAttempts[frameNumber & mask];
+		}
+
+		/*
+		 * Notes a frame being transmitted (or given up on after collisions).
+		 */
+		void sent(int frameNumber, long time) {
+			sentTime[frameNumber & mask] = time;
+			sendAttempts[frameNumber & mask]++;
+		}
+
+		/*
+		 * Gives the next frame the next frame number and adds it to the window.
+		 */
+		int add(DataFrame frame) {
+			framesSent = (framesSent + 1) % SEQUENCE_SPACE;
+			window[framesSent & mask] = frame;
+			sendAttempts[framesSent & mask] = 0;
+			outstanding++;
+			return framesSent;
+		}
+	}
+
+	/*
+	 * Sequencing state for the frames received from one device: the last frame
+	 * number delivered in order and, for Selective Repeat, the frames received
+	 * ahead of it, indexed by frame number like a SendSequence's window.
+	 */
+	private class ReceiveSequence {
+
+		int framesReceived = 0;
+
+		private final int mask = Integer.highestOneBit(windowSize * 2 - 1) - 1;
+		private final DataFrame[] reorderBuffer = (arqMode == ArqMode.SELECTIVE_REPEAT) ? new DataFrame[mask + 1] : null;
+
+		DataFrame buffered(int frameNumber) {
+			return reorderBuffer[frameNumber & mask];
+		}
+
+		void setBuffered(int frameNumber, DataFrame frame) {
+			reorderBuffer[frameNumber & mask] = frame;
+		}
+
+	}
+
+	/*
+	 * Private inner class that transmits data, run by the transmitter thread.
+	 */
+	private class TXThread implements Runnable {
+
+		// Bytes of the frame being transmitted coded for error correction, then stuffed.
+		private final byte[] coded = new byte[DataFrame.MAX_CODED_FRAME_SIZE];
+		private final byte[] stuffed = new byte[Framing.maxEncodedLength(DataFrame.MAX_CODED_FRAME_SIZE)];
+
+		// Symbol levels of the byte being transmitted and the level of the last symbol sent.
+		private final double[] symbols = new double[LineCoding.MAX_SYMBOLS_PER_BYTE];
+		private double lastLevel;
+
+		// Time the current pulse ends. Pulses are timed from the start pulse so
+		// that long runs of symbols do not drift.
+		private long pulseEnd;
+
+		// Sequencing state for each device frames have been sent to, indexed by
+		// device number, and the same states in the order they were made.
+		private final SendSequence[] sequences = new SendSequence[DEVICES];
+		private final ArrayList<SendSequence> peers = new ArrayList<SendSequence>();
+
+		// Time the oldest acknowledgement waiting to be sent was noticed (-1 if there are none).
+		private long ackWaitingSince = -1;
+
+		// Number of pulses running that the wire has differed from the voltage
+		// this card drives by a collision's worth.
+		private int mismatches;
+
+		// Picks backoff times. Seeded by device number so runs can be reproduced
+		// while cards which collide still pick different times.
+		private final Random random = new Random(deviceNumber);
+
+		public void run() {
+			try {
+				clock.attach();
+
+				while (true) {
+
+					// Blocks until there is something to do, an acknowledgement is due or a frame times out.
+					clock.waitFor(NetworkCard.this, () -> (!ackQueue.isEmpty() && ackWaitingSince < 0) || !receivedAcks.isEmpty()
+							|| canSendNext() || !forwardQueue.isEmpty(), timeToNextEvent());
+
+					// Bridge ports only send on the frames queued for them.
+					ForwardedFrame forwarded = forwardQueue.poll();
+					if (forwarded != null) {
+						sendForwarded(forwarded);
+						forwarded.release();
+						continue;
+					}
+
+					// Acknowledgements not piggybacked on a data frame in time are sent on their own.
+					if (!ackQueue.isEmpty()) {
+						if (ackWaitingSince < 0)
+							ackWaitingSince = clock.now();
+
+						if (clock.now() - ackWaitingSince >= ACK_DELAY) {
+							DataFrame ack = ackQueue.poll();
+							if (EventLog.DEBUG)
+								log(CardEvent.SENDING_ACK, 0);
+							sendAck(ack);
+							ack.release();
+							if (ackQueue.isEmpty())
+								ackWaitingSince = -1;
+							continue;
+						}
+					}
+
+					processAcks();
+					retransmitTimedOut();
+
+					if (canSendNext()) {
+						// Only this thread takes frames, so the next frame is still at the head of its queue.
+						DataFrame frame = nextFrame();
+						if (frame == outputQueue.peek())
+							take(outputQueue);
+						else
+							asyncQueue.poll();
+
+						SendSequence sequence = sequence(frame.getDestination());
+						int frameNumber = sequence.add(frame);
+						frame.setHeader(frameNumber);
+						sendFrame(sequence, frameNumber);
+					}
+				}
+			} catch (InterruptedException except) {
+				log(CardEvent.TRANSMITTER_INTERRUPTED, 0);
+			} finally {
+				stopped = true;
+				failOutstanding();
+				clock.detach();
+			}
+
+		}
+
+		/*
+		 * Next frame to send: frames from send() go before those from sendAsync().
+		 */
+		private DataFrame nextFrame() {
+			DataFrame frame = outputQueue.peek();
+			return (frame != null) ? frame : asyncQueue.peek();
+		}
+
+		/*
+		 * Whether there is a frame to send and its destination's window has room
+		 * for it. Frames go in the order they were queued, so a frame to a device
+		 * with a full window holds up the frames behind it.
+		 */
+		private boolean canSendNext() {
+			DataFrame frame = nextFrame();
+			return frame != null && sequence(frame.getDestination()).outstanding < windowSize;
+		}
+
+		/*
+		 * Sequencing state for the frames sent to a device, made when the first is sent.
+		 */
+		private SendSequence sequence(int destination) {
+			SendSequence sequence = sequences[destination & 0xFF];
+			if (sequence == null) {
+				sequence = new SendSequence();
+				sequences[destination & 0xFF] = sequence;
+				peers.add(sequence);
+			}
+			return sequence;
+		}
+
+		/*
+		 * Gives up on every frame sent with sendAsync() which has not been
+		 * acknowledged, once the transmitter has stopped.
+		 */
+		private void failOutstanding() {
+			for (SendSequence sequence : peers) {
+				for (int i = 0; i < sequence.outstanding; i++) {
+					int frameNumber = (sequence.base + i) % SEQUENCE_SPACE;
+					DataFrame frame = sequence.frame(frameNumber);
+					if (frame != null)
+						complete(frame, frameNumber, false, sequence.sendAttempts(frameNumber));
+				}
+			}
+			failQueued();
+		}
+
+		/*
+		 * Transmits the frame with the given number once the wire is free, with
+		 * an acknowledgement for its destination piggybacked on it if one is waiting.
+		 * The frame is skipped if an acknowledgement for it arrives while waiting.
+		 */
+		private void sendFrame(SendSequence sequence, int frameNumber) throws InterruptedException {
+			for (int collisions = 0; ; ) {
+				waitForIdleWire(INTER_FRAME_GAP);
+
+				processAcks();
+				DataFrame frame = sequence.frame(frameNumber);
+				if (frame == null)
+					return;
+
+				// A frame sent again after a collision keeps the acknowledgement it took first.
+				if (collisions == 0) {
+					frame.setSync(frameNumber == sequence.syncFrame);
+					frame.setAck(takeAck(frame.getDestination()));
+				}
+				if (transmitFrame(frame)) {
+					metrics.framesSent.increment();
+					break;
+				}
+				if (++collisions == MAX_COLLISIONS)
+					break;
+				backOff(collisions);
+			}
+
+			// A frame given up on after too many collisions is left for the retransmission timeout.
+			sequence.sent(frameNumber, clock.now());
+		}
+
+		/*
+		 * Transmits an acknowledgement on its own once the wire is free.
+		 */
+		private void sendAck(DataFrame ack) throws InterruptedException {
+			for (int collisions = 0; ; ) {
+				waitForIdleWire(ACK_GAP);
+				if (transmitFrame(ack)) {
+					metrics.acksSent.increment();
+					return;
+				}
+				if (++collisions == MAX_COLLISIONS)
+					return;
+				backOff(collisions);
+			}
+		}
+
+		/*
+		 * Sends on a frame passing through a bridge once the wire is free.
+		 * A frame cut short on its way in before it could be started is dropped.
+		 */
+		private void sendForwarded(ForwardedFrame frame) throws InterruptedException {
+			for (int collisions = 0; ; ) {
+				waitForIdleWire(frame.isAck() ? ACK_GAP : INTER_FRAME_GAP);
+				if (frame.isAborted())
+					return;
+
+				transmitting = true;
+				boolean sent;
+				try {
+					sent = transmitForwarded(frame);
+				} finally {
+					transmitting = false;
+				}
+				if (sent) {
+					(frame.isAck() ? metrics.acksSent : metrics.framesSent).increment();
+					return;
+				}
+				if (++collisions == MAX_COLLISIONS)
+					return;
+				backOff(collisions);
+			}
+		}
 
-	// Transmitter thread.
-	private Thread txThread;
+		/*
+		 * Waits a random number of slot times after a frame's nth collision.
+		 */
+		private void backOff(int collisions) throws InterruptedException {
+			int slots = random.nextInt(1 << Math.min(collisions, MAX_BACKOFF_EXPONENT));
+			if (EventLog.DEBUG)
+				log(CardEvent.COLLISION, slots);
+			clock.sleep((long) slots * SLOT_TIME);
+		}
 
-	// Receiver thread.
-	private Thread rxThread;
+		private void processAcks() {
+			Integer acknowledged;
+			while ((acknowledged = receivedAcks.poll()) != null)
+				acknowledge(acknowledged >>> 16, acknowledged & (SEQUENCE_SPACE - 1));
+		}
 
-	/*
-	 * Initial value is the destination of the acknowledgement. 0 implies no acknowledgement to be sent.
-	 * Second value is the sequence number.
-	 */
-	private byte[] ackToSend = {0, 0};
-	private boolean ackReceived = false;
+		/*
+		 * Takes the acknowledgement waiting to go to a device, or -1 if there is none.
+		 * Go-Back-N acknowledgements are cumulative so only the latest is needed.
+		 */
+		private int takeAck(int destination) {
+			int frameNumber = -1;
+			for (DataFrame ack : ackQueue) {
+				if (ack.getDestination() != destination)
+					continue;
+
+				frameNumber = ack.getFrameNumber();
+				ackQueue.remove(ack);
+				ack.release();
+				if (arqMode == ArqMode.SELECTIVE_REPEAT)
+					break;
+			}
 
-	private static final int MAX_TRANSMISSIONS = 5;
+			if (ackQueue.isEmpty())
+				ackWaitingSince = -1;
+			return frameNumber;
+		}
 
-	/*
-	 * NetworkCard constructor.
-	 *
-	 * @param deviceName This provides the name of this device, i.e. "Network Card A".
-	 * @param wire       This is the shared wire that this network card is connected to.
-	 * @param listener   A data frame listener that should be informed when data frames are received.
-	 *                   (May be set to 'null' if network card should not respond to data frames.)
-	 */
-	public NetworkCard(int number, TwistedWirePair wire) {
+		/*
+		 * Carrier sense: defers until the wire has been quiet for the given gap. Data
+		 * frames wait an inter-frame gap, longer than acknowledgements, so they do not
+		 * start on top of an acknowledgement from the other end.
+		 */
+		private void waitForIdleWire(int gap) throws InterruptedException {
+			int quietTime = 0;
+			while (quietTime < gap) {
+				clock.sleep(PULSE_WIDTH / 10);
+				if (!carrierSensed())
+					quietTime += PULSE_WIDTH / 10;
+				else
+					quietTime = 0;
+			}
+		}
 
-		this.deviceNumber = number;
-		this.deviceName = "NetCard" + number;
-		ackToSend[1] = (byte) deviceNumber;
-		this.wire = wire;
+		/*
+		 * Whether another card's signal has reached this one. Only wires which
+		 * notify voltage changes let a signal's propagation delay be allowed for.
+		 */
+		private boolean carrierSensed() {
+			if (isQuiet(wire.getVoltage()))
+				return false;
+			return !edgeNotification || clock.now() - carrierStart >= PROPAGATION_DELAY;
+		}
 
-		txThread = this.new TXThread();
-		rxThread = this.new RXThread();
-	}
+		/*
+		 * Slides the window of frames sent to a device on its acknowledgement. Go-Back-N
+		 * acknowledgements are cumulative, Selective Repeat acknowledgements only cover one frame.
+		 */
+		private void acknowledge(int source, int frameNumber) {
+			SendSequence sequence = sequences[source & 0xFF];
+			if (sequence == null || sequence.outstanding == 0 || distance(sequence.base, frameNumber) >= sequence.outstanding)
+				return;
+
+			if (EventLog.DEBUG)
+				log(CardEvent.ACK_RECEIVED, frameNumber);
+
+			// Karn's rule: only frames sent once give a round trip time.
+			DataFrame frame = sequence.frame(frameNumber);
+			if (frame != null && sequence.sendAttempts(frameNumber) == 1) {
+				long roundTrip = clock.now() - sequence.sentTime(frameNumber);
+				sequence.timer.sample(roundTrip);
+				metrics.ackRoundTrip.record(roundTrip);
+			}
 
-	/*
-	 * Initialize the network card.
-	 */
-	public void init() {
-		txThread.start();
-		rxThread.start();
-	}
+			if (arqMode == ArqMode.GO_BACK_N) {
+				int last = (frameNumber + 1) % SEQUENCE_SPACE;
+				while (sequence.base != last)
+					slide(sequence, true);
+			} else {
+				if (frame != null) {
+					metrics.deliveryLatency.record(clock.now() - frame.getQueuedTime());
+					complete(frame, frameNumber, true, sequence.sendAttempts(frameNumber));
+				}
+				sequence.setFrame(frameNumber, null);
+				while (sequence.outstanding > 0 && sequence.frame(sequence.base) == null)
+					slide(sequence, true);
+			}
+		}
 
+		/*
+		 * Takes the oldest frame out of the window, as acknowledged or given up on.
+		 */
+		private void slide(SendSequence sequence, boolean delivered) {
+			int base = sequence.base;
+			DataFrame frame = sequence.frame(base);
+			if (frame != null) {
+				if (delivered)
+					metrics.deliveryLatency.record(clock.now() - frame.getQueuedTime());
+				else
+					metrics.framesGivenUp.increment();
+				complete(frame, base, delivered, sequence.sendAttempts(base));
+			}
+			sequence.setFrame(base, null);
+			if (base == sequence.syncFrame)
+				sequence.syncFrame = -1;
+			sequence.base = (base + 1) % SEQUENCE_SPACE;
+			sequence.outstanding--;
+		}
 
-	public void send(DataFrame data) throws InterruptedException {
-		data.setSource(deviceNumber);
-		outputQueue.put(data);
-	}
+		/*
+		 * Gives up on a frame which has used all its transmissions, and on any
+		 * frames sent before it which are still unacknowledged. The next frame
+		 * sent to the device is marked so that it stops waiting for them.
+		 */
+		private void giveUp(SendSequence sequence, int frameNumber) {
+			log(CardEvent.TRANSMISSIONS_EXHAUSTED, frameNumber);
 
-	public DataFrame receive() throws InterruptedException {
-		DataFrame data = inputQueue.take();
-		return data;
-	}
+			int last = (frameNumber + 1) % SEQUENCE_SPACE;
+			while (sequence.base != last)
+				slide(sequence, false);
+			while (sequence.outstanding > 0 && sequence.frame(sequence.base) == null)
+				slide(sequence, true);
+
+			sequence.syncFrame = (sequence.outstanding > 0) ? sequence.base : (sequence.framesSent + 1) % SEQUENCE_SPACE;
+		}
 
+		/*
+		 * Retransmits frames whose acknowledgement has timed out.
+		 * Go-Back-N resends the whole window, Selective Repeat only the late frame.
+		 */
+		private void retransmitTimedOut() throws InterruptedException {
+			for (SendSequence sequence : peers)
+				retransmitTimedOut(sequence);
+		}
 
-	/*
-	 * Private inner thread class that transmits data.
-	 */
-	private class TXThread extends Thread {
-		private int sendAttempts = 0;
+		private void retransmitTimedOut(SendSequence sequence) throws InterruptedException {
+			long now = clock.now();
 
-		public void run() {
-			try {
-				while (true) {
-//					System.out.println(deviceNumber + " " + ackToSend[0]);
+			for (int i = 0; i < sequence.outstanding; i++) {
+				int frameNumber = (sequence.base + i) % SEQUENCE_SPACE;
 
-					// Blocks if nothing is in queue.
-					DataFrame frame = outputQueue.take();
+				if (sequence.frame(frameNumber) == null || now - sequence.sentTime(frameNumber) < sequence.timer.timeout())
+					continue;
 
-					if (ackToSend[0] == 0)
-						frame.setHeader(++framesSent);
-					else {
-						System.out.println(deviceNumber + " - sending ack");
-					}
-					do {
-//						System.out.println(deviceNumber + " - Frame no: " + framesSent);
-						transmitFrame(frame);
+				if (EventLog.DEBUG)
+					log(CardEvent.RESENDING, frameNumber);
+				sequence.timer.backOff(now);
 
-						if (ackToSend[0] != 0) {
-							ackToSend[0] = 0;
-							break;
-						} else {
-							sendAttempts++;
-							if (sendAttempts > MAX_TRANSMISSIONS)
-								break;
-						}
+				// Frame numbers are fixed first, as acknowledgements arriving meanwhile slide the window.
+				int resendCount = (arqMode == ArqMode.GO_BACK_N) ? sequence.outstanding - i : 1;
+				for (int j = 0; j < resendCount; j++) {
+					int resend = (frameNumber + j) % SEQUENCE_SPACE;
+					if (sequence.frame(resend) == null)
+						continue;
 
-					} while (waitingForAcknowledgement());
-					if (sendAttempts > MAX_TRANSMISSIONS) {
-						System.out.println(deviceNumber + " - " + MAX_TRANSMISSIONS + " transmissions attempted. Terminating transmission.");
-						break;
+					// The window moves on, so later frames are left for the next pass.
+					if (sequence.sendAttempts(resend) >= MAX_TRANSMISSIONS) {
+						giveUp(sequence, resend);
+						return;
 					}
+					metrics.retransmissions.increment();
+					sendFrame(sequence, resend);
 				}
-			} catch (InterruptedException except) {
-				System.out.println(deviceName + " Transmitter Thread Interrupted - terminated.");
+				if (arqMode == ArqMode.GO_BACK_N)
+					break;
 			}
-
 		}
 
 		/*
-		 * Sleeps thread until woken by rxThread confirming an acknowledgement
-		 * or timeout period has passed.
+		 * Time until a waiting acknowledgement is due or a frame times out (0 if neither).
 		 */
-		private synchronized boolean waitingForAcknowledgement() {
-			System.out.println(deviceNumber + " - waiting for ack..");
-			long time = System.currentTimeMillis();
-			while (!ackReceived) {
-				try {
-					wait(TIMEOUT);
-					if (System.currentTimeMillis() - time > TIMEOUT) {
-						System.out.println(deviceNumber + " - No ack.. Resending...");
-						return true;
-					}
-				} catch (InterruptedException e) {
+		private long timeToNextEvent() {
+			long wait = timeToNextTimeout();
+			if (ackWaitingSince >= 0) {
+				long ackWait = Math.max(1, ackWaitingSince + ACK_DELAY - clock.now());
+				wait = (wait == 0) ? ackWait : Math.min(wait, ackWait);
+			}
+			return wait;
+		}
 
+		/*
+		 * Time until the earliest unacknowledged frame times out (0 if none are in flight).
+		 */
+		private long timeToNextTimeout() {
+			long earliest = Long.MAX_VALUE;
+			for (SendSequence sequence : peers) {
+				for (int i = 0; i < sequence.outstanding; i++) {
+					int frameNumber = (sequence.base + i) % SEQUENCE_SPACE;
+					if (sequence.frame(frameNumber) != null)
+						earliest = Math.min(earliest, sequence.sentTime(frameNumber) + sequence.timer.timeout());
 				}
 			}
-			System.out.println(deviceNumber + " - Ack received");
-			sendAttempts = 0;
-			ackReceived = false;
-			return false;
+			if (earliest == Long.MAX_VALUE)
+				return 0;
+			return Math.max(1, earliest - clock.now());
+		}
+
+		/*
+		 * Codes the bytes of a frame for error correction, if any, and stuffs them.
+		 *
+		 * @return Number of stuffed bytes to transmit.
+		 */
+		private int encode(byte[] frame, int length) {
+			if (errorCorrection == ErrorCorrection.NONE)
+				return framing.encode(frame, length, stuffed);
+			return framing.encode(coded, errorCorrection.encode(frame, length, coded), stuffed);
 		}
 
 		/**
 		 * Tell the network card to send this data frame across the wire.
 		 * NOTE - THIS METHOD ONLY RETURNS ONCE IT HAS TRANSMITTED THE DATA FRAME.
+		 * <p>
+		 * If another card's signal is seen on the wire meanwhile the frame is cut
+		 * short and the wire jammed, so every card involved knows to back off.
 		 *
 		 * @param frame Data frame to transmit across the network.
+		 * @return false if the frame collided with another card's transmission.
 		 */
-		public void transmitFrame(DataFrame frame) throws InterruptedException {
+		public boolean transmitFrame(DataFrame frame) throws InterruptedException {
 
 			if (frame != null) {
+				mismatches = 0;
 
 				// Low voltage signal to get ready ...
-				wire.setVoltage(deviceName, LOW_VOLTAGE);
-				sleep(PULSE_WIDTH * 4);
+				boolean sent = transmitLeadIn();
 
-				byte[] payload = frame.getTransmittedBytes();
+				// Synchronous frames and block codes only need one start for the whole frame.
+				if (sent && synchronous)
+					sent = transmitSyncWord();
+				else if (sent && lineCoding.isBlockCode())
+					sent = transmitStartPulse();
+
+				// Byte stuff if required.
+				int length = encode(frame.getFrameArray(), frame.getLength());
 
 				// Send bytes in asynchronous style with 0.2 seconds gaps between them.
-				for (int i = 0; i < payload.length; i++) {
+				for (int i = 0; sent && i < length; i++)
+					sent = transmitByte(stuffed[i]);
 
-					// Byte stuff if required.
-					if (payload[i] == 0x7E || payload[i] == 0x7D)
-						transmitByte((byte) 0x7D);
+				// Append a 0x7E to terminate frame.
+				if (sent)
+					sent = transmitByte(ByteStuffing.FLAG);
 
-					transmitByte(payload[i]);
+				if (sent) {
+					metrics.bytesSent.add(length + 1);
+				} else {
+					metrics.collisions.increment();
+					transmitJam();
 				}
 
-				// Append a 0x7E to terminate frame.
-				transmitByte((byte) 0x7E);
-
 //				sleep(PULSE_WIDTH * 2);
-				wire.setVoltage(deviceName, 0);
-				sleep(PULSE_WIDTH);
+				wire.setVoltage(0);
+				clock.sleep(PULSE_WIDTH);
+				return sent;
 			}
+			return true;
 
 		}
 
-		private void transmitByte(byte value) throws InterruptedException {
+		/*
+		 * Sends on the framed bytes of a frame passing through a bridge, as they
+		 * arrive when cutting through. A frame cut short on its way in (or whose
+		 * next byte is overdue) is cut short on its way out with a jam, so that
+		 * receivers drop it.
+		 *
+		 * @return false if the frame collided with another card's transmission.
+		 */
+		private boolean transmitForwarded(ForwardedFrame frame) throws InterruptedException {
+			mismatches = 0;
+
+			boolean sent = transmitLeadIn();
+			if (sent && synchronous)
+				sent = transmitSyncWord();
+			else if (sent && lineCoding.isBlockCode())
+				sent = transmitStartPulse();
+
+			boolean cut = false;
+			for (int i = 0; sent; i++) {
+				int next = i;
+				boolean arrived = clock.waitFor(frame, () -> frame.getLength() > next || frame.isEnded(), FORWARD_TIMEOUT);
+
+				if (i < frame.getLength()) {
+					sent = transmitByte(frame.getBytes()[i]);
+				} else {
+					cut = !arrived || frame.isAborted();
+					break;
+				}
+			}
 
-			// Low voltage signal ...
-			wire.setVoltage(deviceName, LOW_VOLTAGE);
-			sleep(PULSE_WIDTH * 4);
+			if (sent && !cut)
+				sent = transmitByte(ByteStuffing.FLAG);
 
-			// Set initial pulse for asynchronous transmission.
-			wire.setVoltage(deviceName, HIGH_VOLTAGE);
-			sleep(PULSE_WIDTH);
+			if (sent && !cut)
+				metrics.bytesSent.add(frame.getLength() + 1);
+			else if (!sent)
+				metrics.collisions.increment();
 
-			// Go through bits in the value (big-endian bits first) and send pulses.
+			if (!sent || cut)
+				transmitJam();
 
-			for (int bit = 0; bit < 8; bit++) {
-				if ((value & 0x80) == 0x80) {
-					wire.setVoltage(deviceName, HIGH_VOLTAGE);
-				} else {
-					wire.setVoltage(deviceName, LOW_VOLTAGE);
-				}
+			wire.setVoltage(0);
+			clock.sleep(PULSE_WIDTH);
+			return sent;
+		}
+
+		private boolean transmitByte(byte value) throws InterruptedException {
+
+			if (!continuous()) {
+				// Low voltage signal ...
+				if (!transmitLeadIn() || !transmitStartPulse())
+					return false;
+			}
+
+			// Send a pulse for each symbol the line coding makes of the value.
+			lineCoding.encode(value & 0xFF, symbols, lastLevel);
+			for (int i = 0; i < lineCoding.symbolsPerByte(); i++) {
+				if (!transmitPulse(symbols[i]))
+					return false;
+			}
+			lastLevel = symbols[lineCoding.symbolsPerByte() - 1];
+			return true;
+		}
 
-				// Shift value.
-				value <<= 1;
+		/*
+		 * Holds the wire low for four pulses before a start pulse.
+		 */
+		private boolean transmitLeadIn() throws InterruptedException {
+			pulseEnd = clock.now();
+			for (int i = 0; i < 4; i++) {
+				if (!transmitPulse(-1))
+					return false;
+			}
+			return true;
+		}
+
+		/*
+		 * Set initial pulse for asynchronous transmission.
+		 */
+		private boolean transmitStartPulse() throws InterruptedException {
+			pulseEnd = clock.now();
+			return transmitPulse(1);
+		}
 
-				sleep(PULSE_WIDTH);
+		/*
+		 * Sends the sync word as two level pulses whatever the line coding.
+		 * Its first pulse doubles as the start pulse.
+		 */
+		private boolean transmitSyncWord() throws InterruptedException {
+			pulseEnd = clock.now();
+			for (int bit = 7; bit >= 0; bit--) {
+				if (!transmitPulse(((SYNC_WORD >> bit) & 1) != 0 ? 1 : -1))
+					return false;
 			}
+			return true;
+		}
+
+		/*
+		 * Holds the wire low after a collision. Receivers take this as a lead-in,
+		 * not a byte, and drop the frame cut short when the next one starts.
+		 */
+		private void transmitJam() throws InterruptedException {
+			wire.setVoltage(LOW_VOLTAGE);
+			clock.sleep(PULSE_WIDTH * JAM_PULSES);
+		}
+
+		/*
+		 * Holds a symbol level (as a fraction of the high voltage) for one pulse width,
+		 * checking in the middle of the pulse that no other card is driving the wire.
+		 *
+		 * @return false if a collision has been detected.
+		 */
+		private boolean transmitPulse(double level) throws InterruptedException {
+			double driven = level * HIGH_VOLTAGE;
+			wire.setVoltage(driven);
+			lastLevel = level;
+			pulseEnd += PULSE_WIDTH;
+
+			clock.sleep(Math.max(0, pulseEnd - PULSE_WIDTH / 2 - clock.now()));
+			if (Math.abs(wire.getVoltage() - driven) < COLLISION_VOLTAGE)
+				mismatches = 0;
+			else if (++mismatches == 2)
+				return false;
+
+			clock.sleep(Math.max(0, pulseEnd - clock.now()));
+			return true;
 		}
 
 	}
 
 	/*
-	 * Private inner thread class that receives data.
+	 * Private inner class that receives data, run by the receiver thread.
 	 */
-	private class RXThread extends Thread {
+	private class RXThread implements Runnable {
+
+		// Raw bytes of the frame being received, and the same bytes unstuffed but still coded
+		// for error correction.
+		private final byte[] received = new byte[Framing.maxEncodedLength(DataFrame.MAX_CODED_FRAME_SIZE)];
+		private final byte[] coded = new byte[DataFrame.MAX_CODED_FRAME_SIZE];
+
+		// Levels sampled for the byte being received and the level of the last symbol.
+		private final double[] samples = new double[LineCoding.MAX_SYMBOLS_PER_BYTE];
+		private double lastLevel;
+
+		// Levels sampled across the current and previous pulse when oversampling,
+		// and the symbol level decided for the previous pulse (0 if none was).
+		private double[] window = new double[MAX_SAMPLES_PER_PULSE];
+		private double[] previousWindow = new double[MAX_SAMPLES_PER_PULSE];
+		private double previousSymbol;
+
+		// Whether a frame has started, and when the next symbol is sampled.
+		private boolean inFrame;
+		private long sampleTime;
+
+		// Whether a byte start has been seen which begins a new frame, after
+		// the frame being received was dropped for being cut short.
+		private boolean startPending;
+
+		// Copy of the frame being received by a bridge port for the bridge to send
+		// on (null if it is being ignored), and whether it has been routed yet.
+		private ForwardedFrame inbound;
+		private boolean routed;
+
+		// Start of the frame being received decoded far enough to route it: source,
+		// destination, frame number and the flags showing whether it is an acknowledgement.
+		// The coded prefix holds it before error correction is decoded.
+		private final byte[] addresses = new byte[DataFrame.ROUTING_LENGTH];
+		private final byte[] codedPrefix = new byte[ErrorCorrection.maxEncodedLength(DataFrame.ROUTING_LENGTH)];
 
 		public void run() {
 
 			try {
+				clock.attach();
 
 				// Listen for data frames.
 
 				while (true) {
 
-					byte[] bytePayload = new byte[MAX_PAYLOAD_SIZE];
-					int bytePayloadIndex = 0;
+					int receivedIndex = 0;
 					byte receivedByte;
+					inFrame = false;
 
 					while (true) {
-						receivedByte = receiveByte();
+						int value = receiveByte();
+
+						// A code error or a quiet wire cuts the frame short, so it is dropped.
+						if (value < 0) {
+							receivedIndex = -1;
+							break;
+						}
 
-						if ((receivedByte & 0xFF) == 0x7E)
+						receivedByte = (byte) value;
+						if (receivedByte == ByteStuffing.FLAG)
 							break;
 
-						System.out.println(deviceName + " RECEIVED BYTE = " + Integer.toHexString(receivedByte & 0xFF));
+						if (EventLog.TRACE)
+							log(CardEvent.BYTE_RECEIVED, receivedByte & 0xFF);
+						receivedIndex = store(receivedIndex, receivedByte);
 
-						// Unstuff if escaped.
-						if (receivedByte == 0x7D) {
-							receivedByte = receiveByte();
-							System.out.println(deviceName + " ESCAPED RECEIVED BYTE = " + Integer.toHexString(receivedByte & 0xFF));
+						// An escaped byte is data even if it is a flag.
+						if (framing.isEscape(receivedByte)) {
+							value = receiveByte();
+							if (value < 0) {
+								receivedIndex = -1;
+								break;
+							}
+							receivedByte = (byte) value;
+							if (EventLog.TRACE)
+								log(CardEvent.ESCAPED_BYTE_RECEIVED, receivedByte & 0xFF);
+							receivedIndex = store(receivedIndex, receivedByte);
 						}
+					}
 
-						bytePayload[bytePayloadIndex] = receivedByte;
-						bytePayloadIndex++;
+					if (bridge != null) {
+						passOn(receivedIndex);
+						continue;
 					}
+
+					// Unstuff straight into a pooled frame.
+					DataFrame frame = DataFrame.acquire();
+					frame.setIntegrityCheck(integrityCheck);
+					frame.setLength(Math.max(0, decode(receivedIndex, frame.getFrameArray())));
+
 					// Block receiving data if queue full.
-					checkFrameData(bytePayloadIndex, bytePayload);
+					if (!checkFrameData(frame))
+						frame.release();
 				}
 
 			} catch (InterruptedException except) {
-				System.out.println(deviceName + " Interrupted: " + getName());
+				log(CardEvent.RECEIVER_INTERRUPTED, 0);
+			} finally {
+				clock.detach();
+			}
+
+		}
+
+		/*
+		 * Stores a received byte, or marks the frame as overlong (-1) once the
+		 * buffer is full so the rest of it is dropped up to the next flag.
+		 */
+		private int store(int receivedIndex, byte value) {
+			if (receivedIndex < 0 || receivedIndex == received.length)
+				return -1;
+			received[receivedIndex] = value;
+
+			if (bridge != null)
+				passOn(value, receivedIndex + 1);
+			return receivedIndex + 1;
+		}
+
+		/*
+		 * Copies a received byte into the frame a bridge port passes on. Frames
+		 * starting while the port is sending are its own and are ignored. When
+		 * cutting through, the frame is routed as soon as its addresses are in.
+		 */
+		private void passOn(byte value, int length) {
+			if (length == 1) {
+				inbound = transmitting ? null : ForwardedFrame.acquire();
+				routed = false;
+			}
+			if (inbound == null)
+				return;
+			inbound.append(value);
+
+			if (routed) {
+				clock.signal(inbound);
+			} else if (bridge.getMode() == ForwardingMode.CUT_THROUGH && decodeAddresses(length)
+					&& !DataFrame.isAck(addresses)) {
+				bridge.learn(addresses[0] & 0xFF, port);
+				bridge.route(inbound, port, addresses[1] & 0xFF);
+				routed = true;
+			}
+		}
+
+		/*
+		 * Decodes the start of the frame being received into its addresses and flags.
+		 * Acknowledgements are short, so they are stored and checked rather than cut through.
+		 *
+		 * @param length Number of bytes received so far.
+		 */
+		private boolean decodeAddresses(int length) {
+			if (errorCorrection == ErrorCorrection.NONE)
+				return framing.decodePrefix(received, length, addresses) == addresses.length;
+
+			int prefix = framing.decodePrefix(received, length, codedPrefix);
+			return errorCorrection.decodePrefix(codedPrefix, prefix, addresses) == addresses.length;
+		}
+
+		/*
+		 * Unstuffs the frame received and corrects its errors, if it is coded for error correction.
+		 *
+		 * @param receivedIndex Number of bytes received, or -1 if the frame was cut short.
+		 * @return Number of bytes written to 'out', or -1 if the frame is not valid.
+		 */
+		private int decode(int receivedIndex, byte[] out) {
+			if (receivedIndex < 0)
+				return -1;
+			if (errorCorrection == ErrorCorrection.NONE)
+				return framing.decode(received, receivedIndex, out);
+
+			int length = framing.decode(received, receivedIndex, coded);
+			if (length < 0)
+				return -1;
+
+			// Frames with more errors than can be corrected count as failing their check
+			// (bridge ports count them when they check the frame).
+			length = errorCorrection.decode(coded, length, out);
+			if (length < 0 && bridge == null)
+				metrics.checksumFailures.increment();
+			return length;
+		}
+
+		/*
+		 * Hands a frame received by a bridge port to the bridge once it has ended.
+		 * Frames already routed are just marked as ended. Others, acknowledgements
+		 * included, are routed if they pass their integrity check, and the bridge
+		 * learns their source.
+		 *
+		 * @param receivedIndex Number of bytes received, or -1 if the frame was cut short.
+		 */
+		private void passOn(int receivedIndex) {
+			ForwardedFrame frame = inbound;
+			inbound = null;
+			if (frame == null)
+				return;
+
+			if (routed) {
+				if (receivedIndex < 0) {
+					frame.setAborted();
+				} else {
+					frame.setComplete();
+					metrics.framesReceived.increment();
+				}
+				clock.signal(frame);
+			} else if (receivedIndex > 0) {
+				frame.setComplete();
+
+				DataFrame check = DataFrame.acquire();
+				check.setIntegrityCheck(integrityCheck);
+				byte[] bytes = check.getFrameArray();
+				check.setLength(Math.max(0, decode(receivedIndex, bytes)));
+
+				if (check.isIntact()) {
+					frame.setAck(check.isAck());
+					(check.isAck() ? metrics.acksReceived : metrics.framesReceived).increment();
+					bridge.learn(bytes[0] & 0xFF, port);
+					bridge.route(frame, port, bytes[1] & 0xFF);
+				} else {
+					metrics.checksumFailures.increment();
+				}
+				check.release();
 			}
+			frame.release();
+		}
+
+		// Sequencing state for each device frames have been received from, indexed by device number.
+		private final ReceiveSequence[] sequences = new ReceiveSequence[DEVICES];
 
+		private ReceiveSequence sequence(int source) {
+			ReceiveSequence sequence = sequences[source & 0xFF];
+			if (sequence == null) {
+				sequence = new ReceiveSequence();
+				sequences[source & 0xFF] = sequence;
+			}
+			return sequence;
 		}
 
 		/*
 		 * Checks received data is a valid frame or acknowledgement
+		 *
+		 * @return true if the frame has been kept for delivery, false if it can be released.
+		 */
+		private boolean checkFrameData(DataFrame frame) throws InterruptedException {
+			if (frame.getLength() < frame.headerSize())
+				return false;
+
+			if (EventLog.DEBUG)
+				log(frame.isAck() ? CardEvent.ACK_ARRIVED : CardEvent.FRAME_RECEIVED, 0);
+
+			// Acknowledgements are checked like any frame, so a corrupted one cannot slide the window.
+			if (!frame.checkHeader(deviceNumber)) {
+				if (EventLog.DEBUG)
+					log(CardEvent.CORRUPT_FRAME, 0);
+				if (!frame.isIntact())
+					metrics.checksumFailures.increment();
+				return false;
+			}
+
+			if (frame.isAck()) {
+				receivedAck(frame.getSource(), frame.getFrameNumber());
+				return false;
+			}
+			metrics.framesReceived.increment();
+
+			if (frame.hasAck())
+				receivedAck(frame.getSource(), frame.getAck());
+			if (frame.isSync())
+				resynchronise(sequence(frame.getSource()), frame.getFrameNumber());
+
+			if (arqMode == ArqMode.GO_BACK_N)
+				return acceptGoBackN(frame);
+			else
+				return acceptSelectiveRepeat(frame);
+		}
+
+		/*
+		 * Stops waiting for frames the sender has given up on: those before a frame
+		 * marked for it, unless this card has already received past it. Frames held
+		 * for Selective Repeat before the marked frame have been acknowledged, so
+		 * they are delivered in order and only the missing ones are skipped.
+		 */
+		private void resynchronise(ReceiveSequence sequence, int frameNumber) throws InterruptedException {
+			int last = (frameNumber - 1 + SEQUENCE_SPACE) % SEQUENCE_SPACE;
+			int skipped = distance(sequence.framesReceived, last);
+			if (skipped == 0 || skipped >= SEQUENCE_SPACE / 2)
+				return;
+
+			if (EventLog.DEBUG)
+				log(CardEvent.RESYNCHRONISED, frameNumber);
+
+			if (arqMode == ArqMode.GO_BACK_N) {
+				sequence.framesReceived = last;
+				return;
+			}
+			while (sequence.framesReceived != last) {
+				int next = (sequence.framesReceived + 1) % SEQUENCE_SPACE;
+				DataFrame held = sequence.buffered(next);
+				sequence.framesReceived = next;
+				if (held != null) {
+					sequence.setBuffered(next, null);
+					deliver(held);
+				}
+			}
+		}
+
+		/*
+		 * Only the next frame in sequence from its source is accepted. Anything else
+		 * is answered with the last in-order frame number so the sender can resynchronise.
 		 */
-		private void checkFrameData(int bytePayloadIndex, byte[] bytePayload) throws InterruptedException {
-			if (bytePayloadIndex == 2) {
-				System.out.println(deviceNumber + " - Putting together ack...");
-				byte[] ack = Arrays.copyOfRange(bytePayload, 0, bytePayloadIndex);
-				if (ack[0] == deviceNumber && ack[1] == framesSent)
-					receivedAck();
-			} else if (bytePayloadIndex > 4) {
-				System.out.println(deviceNumber + " - Frame received");
-				DataFrame newFrame = new DataFrame(Arrays.copyOfRange(bytePayload, 0, bytePayloadIndex));
-				if (newFrame.checkHeader(deviceNumber, framesReceived + 1)) {
-					System.out.println(deviceNumber + " - Valid frame");
-					framesReceived++;
-					sendAcknowledgement(newFrame.getHeader()[0]);
-					if (!inputQueue.contains(newFrame))
-						inputQueue.put(newFrame);
-				} else
-					System.out.println(deviceNumber + " - Corrupt frame");
+		private boolean acceptGoBackN(DataFrame frame) throws InterruptedException {
+			ReceiveSequence sequence = sequence(frame.getSource());
+			int expected = (sequence.framesReceived + 1) % SEQUENCE_SPACE;
+
+			if (frame.getFrameNumber() == expected) {
+				if (EventLog.DEBUG)
+					log(CardEvent.VALID_FRAME, expected);
+				sequence.framesReceived = expected;
+				sendAcknowledgement(frame.getSource(), expected);
+				deliver(frame);
+				return true;
+			} else {
+				if (EventLog.DEBUG)
+					log(CardEvent.OUT_OF_SEQUENCE_FRAME, frame.getFrameNumber());
+				if (distance(frame.getFrameNumber(), sequence.framesReceived) < windowSize)
+					metrics.duplicatesDropped.increment();
+				else
+					metrics.outOfOrderDropped.increment();
+				sendAcknowledgement(frame.getSource(), sequence.framesReceived);
+				return false;
 			}
 		}
 
 		/*
-		 * Wakes txThread after confirming acknowledgement is received.
+		 * Frames within the receive window are acknowledged and held in the reorder
+		 * buffer until every frame before them has arrived. Duplicates of frames
+		 * already delivered are acknowledged again in case the first ack was lost.
 		 */
-		private void receivedAck() {
-			System.out.println(deviceNumber + " - Announcing ack received.");
-			ackReceived = true;
-			synchronized (txThread) {
-				txThread.notify();
+		private boolean acceptSelectiveRepeat(DataFrame frame) throws InterruptedException {
+			ReceiveSequence sequence = sequence(frame.getSource());
+			int frameNumber = frame.getFrameNumber();
+			int expected = (sequence.framesReceived + 1) % SEQUENCE_SPACE;
+
+			if (distance(expected, frameNumber) < windowSize) {
+				if (EventLog.DEBUG)
+					log(CardEvent.VALID_FRAME, frameNumber);
+				sendAcknowledgement(frame.getSource(), frameNumber);
+
+				// A frame resent after its ack was lost may already be buffered.
+				if (sequence.buffered(frameNumber) != null) {
+					metrics.duplicatesDropped.increment();
+					return false;
+				}
+				sequence.setBuffered(frameNumber, frame);
+
+				DataFrame next;
+				while ((next = sequence.buffered(expected)) != null) {
+					sequence.setBuffered(expected, null);
+					sequence.framesReceived = expected;
+					expected = (expected + 1) % SEQUENCE_SPACE;
+					deliver(next);
+				}
+				return true;
+			} else if (distance(frameNumber, sequence.framesReceived) < windowSize) {
+				if (EventLog.DEBUG)
+					log(CardEvent.DUPLICATE_FRAME, frameNumber);
+				metrics.duplicatesDropped.increment();
+				sendAcknowledgement(frame.getSource(), frameNumber);
+			} else {
+				metrics.outOfOrderDropped.increment();
 			}
+			return false;
 		}
 
-		public byte receiveByte() throws InterruptedException {
+		/*
+		 * Passes a frame received in order on to the input channel open for its
+		 * source, or to receive() if there is none.
+		 */
+		private void deliver(DataFrame frame) throws InterruptedException {
+			metrics.framesDelivered.increment();
+			metrics.bytesDelivered.add(frame.getPayloadLength());
+
+			int source = frame.getSource();
+			LinkedBlockingQueue<DataFrame> stream = streams.get(source);
+			if (stream != null) {
+				put(stream, frame);
+
+				// If the channel was closed meanwhile, a frame left in its queue goes to receive().
+				if (streams.get(source) == stream || !stream.remove(frame))
+					return;
+			}
+			put(inputQueue, frame);
 
-			double upperThresholdVoltage = HIGH_VOLTAGE + LOW_VOLTAGE / 3;
-			double lowerThresholdVoltage = LOW_VOLTAGE + HIGH_VOLTAGE / 3;
-			byte value = 0;
+			FrameSubscription subscriber = subscription.get();
+			if (subscriber != null)
+				subscriber.drain();
+		}
 
-			while (!checkByteStart(upperThresholdVoltage, lowerThresholdVoltage)) ;
+		/*
+		 * Passes a frame number acknowledged by a device to the transmitter.
+		 */
+		private void receivedAck(int source, int frameNumber) {
+			if (EventLog.DEBUG)
+				log(CardEvent.ACK_ANNOUNCED, frameNumber);
+			metrics.acksReceived.increment();
+			receivedAcks.offer((source & 0xFF) << 16 | frameNumber);
+			clock.signal(NetworkCard.this);
+		}
 
-			// Sleep till middle of next pulse.
-			sleep(PULSE_WIDTH + PULSE_WIDTH / 4);
+		/*
+		 * Receives the next byte.
+		 *
+		 * @return The byte (0 - 255), or -1 if it was not a valid code or
+		 *         the frame was cut short without a flag.
+		 */
+		public int receiveByte() throws InterruptedException {
 
-			// Use 8 next pulses for byte.
-			for (int i = 0; i < 8; i++) {
-//				System.out.println(deviceNumber + " - i: " + i);
-				value *= 2;
+			// Continuous bytes follow on from each other after the frame's start.
+			if (!continuous() || !inFrame) {
+				long lastByteEnd = sampleTime;
+				if (!startPending) {
+					do {
+						while (!checkByteStart(UPPER_THRESHOLD_VOLTAGE, LOWER_THRESHOLD_VOLTAGE)) ;
 
-				if (wire.getVoltage(deviceName) > 0) {
-					value += 1;
+						// Sample in the middle of each pulse (the start pulse edge is seen as soon as it happens).
+						sampleTime = clock.now() + PULSE_WIDTH + PULSE_WIDTH / 2;
+						lastLevel = 1;
+						previousSymbol = 0;
+					} while (synchronous && !receiveSyncWord());
 				}
+				startPending = false;
+
+				// After a collision the next frame starts long after the last byte received.
+				// (The sample time runs half a pulse past the end of a byte but one and a
+				// half past a start pulse, hence the pulse taken off.)
+				long gap = sampleTime - lastByteEnd - PULSE_WIDTH;
+				if (inFrame && !continuous() && gap > MAX_BYTE_GAP) {
+					startPending = true;
+					return -1;
+				}
+				inFrame = true;
+			}
 
-				sleep(PULSE_WIDTH);
+			boolean idle = true;
+			int symbols = lineCoding.symbolsPerByte();
+			for (int i = 0; i < symbols; i++) {
+				samples[i] = sample();
+				idle &= Math.abs(samples[i]) < lineCoding.idleLevel();
 			}
+			clock.sleep(Math.max(0, firstSampleTime() - clock.now()));
 
+			if (idle && continuous())
+				return -1;
+
+			int value = lineCoding.decode(samples, lastLevel);
+			lastLevel = samples[symbols - 1];
 			return value;
 		}
 
+		/*
+		 * Checks the rest of the sync word follows its first pulse.
+		 * Anything else was noise, or the middle of a frame, and is ignored.
+		 */
+		private boolean receiveSyncWord() throws InterruptedException {
+			int word = 1;
+			for (int bit = 0; bit < 7; bit++)
+				word = (word << 1) | (sample() > 0 ? 1 : 0);
+			return word == SYNC_WORD;
+		}
+
+		/*
+		 * Samples the wire level (as a fraction of the high voltage) in the middle
+		 * of the next symbol. If the wire crossed a threshold close to the symbol
+		 * boundary before it, the following samples are pulled half way towards
+		 * that edge, so the receiver keeps in step with the transmitter's clock.
+		 * Oversampling receivers take several samples instead.
+		 */
+		private double sample() throws InterruptedException {
+			if (samplesPerPulse > 1)
+				return oversample();
+
+			clock.sleep(Math.max(0, sampleTime - clock.now()));
+			double level = wire.getVoltage() / HIGH_VOLTAGE;
+
+			long error = lastEdgeTime - (sampleTime - PULSE_WIDTH / 2);
+			if (edgeNotification && Math.abs(error) < PULSE_WIDTH / 4)
+				sampleTime += error / 2;
+
+			sampleTime += PULSE_WIDTH;
+			return level;
+		}
+
+		/*
+		 * Samples the wire level evenly across the next symbol and decides the
+		 * symbol's level from them. Where the symbol differs from the one before,
+		 * samples at the start of its window still at the old level show the edge
+		 * came late, and samples at the end of the previous window already at the
+		 * new level show it came early. The following samples are pulled half way
+		 * towards the edge (early-late gate clock recovery), so the receiver
+		 * tracks the transmitter's clock without edge notifications.
+		 */
+		private double oversample() throws InterruptedException {
+			int spacing = PULSE_WIDTH / samplesPerPulse;
+			long start = firstSampleTime();
+			for (int i = 0; i < samplesPerPulse; i++) {
+				clock.sleep(Math.max(0, start + (long) i * spacing - clock.now()));
+				window[i] = wire.getVoltage() / HIGH_VOLTAGE;
+			}
+			// A mean dragged towards zero by a late or early edge still gives the symbol.
+			double level = bitDecision.decide(window, samplesPerPulse, lineCoding);
+			double symbol = (level == 0) ? 0 : lineCoding.nearestLevel(level);
+
+			if (previousSymbol != 0 && symbol != 0 && symbol != previousSymbol) {
+				int late = 0;
+				while (late < samplesPerPulse && lineCoding.symbolLevel(window[late]) == previousSymbol)
+					late++;
+				int early = 0;
+				while (early < samplesPerPulse
+						&& lineCoding.symbolLevel(previousWindow[samplesPerPulse - 1 - early]) == symbol)
+					early++;
+				if (late < samplesPerPulse && early < samplesPerPulse)
+					sampleTime += (late - early) * spacing / 2;
+			}
+
+			double[] sampled = window;
+			window = previousWindow;
+			previousWindow = sampled;
+			previousSymbol = symbol;
+
+			sampleTime += PULSE_WIDTH;
+			return level;
+		}
+
+		/*
+		 * Time the next symbol is first sampled: its middle, or the start of its
+		 * window when oversampling, which must not be waited past.
+		 */
+		private long firstSampleTime() {
+			if (samplesPerPulse == 1)
+				return sampleTime;
+			return sampleTime - PULSE_WIDTH / 2 + PULSE_WIDTH / samplesPerPulse / 2;
+		}
+
 		/*
 		 * Checks for when a valid byte is about to be sent.
 		 * Prevents false results during timeout period from being read.
 		 */
 		private boolean checkByteStart(double upperV, double lowerV) throws InterruptedException {
-			while (wire.getVoltage(deviceName) > lowerV) {
-				sleep(PULSE_WIDTH / 10);
-			}
+			awaitVoltageBelow(lowerV);
 
 			int i = 0;
-			while (wire.getVoltage(deviceName) < lowerV && i < 3) {
+			while (wire.getVoltage() < lowerV && i < 3) {
 				i++;
-				sleep(PULSE_WIDTH);
+				clock.sleep(PULSE_WIDTH);
 			}
 
 			if (i == 3) {
-				while (wire.getVoltage(deviceName) < upperV) {
-					sleep(PULSE_WIDTH / 10);
-				}
+				awaitVoltageAbove(upperV);
 				return true;
 			} else
 				return false;
 		}
 
 		/*
-		 * Makes acknowledgement and adds it to outputQueue for txThread to send.
-		 * Makes a frame consisting of 2 bytes.
+		 * Parks the receiver until the wire voltage crosses a threshold.
+		 * Wires which cannot notify voltage changes are polled instead.
+		 */
+		private void awaitVoltageBelow(double threshold) throws InterruptedException {
+			if (!edgeNotification) {
+				while (wire.getVoltage() > threshold)
+					clock.sleep(PULSE_WIDTH / 10);
+				return;
+			}
+
+			awaitingEdge = true;
+			try {
+				clock.waitFor(wire, () -> wire.getVoltage() <= threshold, 0);
+			} finally {
+				awaitingEdge = false;
+			}
+		}
+
+		private void awaitVoltageAbove(double threshold) throws InterruptedException {
+			if (!edgeNotification) {
+				while (wire.getVoltage() < threshold)
+					clock.sleep(PULSE_WIDTH / 10);
+				return;
+			}
+
+			awaitingEdge = true;
+			try {
+				clock.waitFor(wire, () -> wire.getVoltage() >= threshold, 0);
+			} finally {
+				awaitingEdge = false;
+			}
+		}
+
+		/*
+		 * Makes acknowledgement and adds it to ackQueue for txThread to send.
+		 * It is a header with no payload, protected by the card's integrity check.
 		 */
-		private void sendAcknowledgement(int dest) throws InterruptedException {
-			ackToSend[0] = (byte) dest;
-			ackToSend[1] = (byte) framesReceived;
-			DataFrame dataFrame = new DataFrame();
-			dataFrame.setHeader(ackToSend);
-			dataFrame.setIsAck(true);
-			outputQueue.put(dataFrame);
+		private void sendAcknowledgement(int dest, int frameNumber) throws InterruptedException {
+			put(ackQueue, DataFrame.acknowledgement(dest, frameNumber, deviceNumber, integrityCheck));
 		}
 
 	}
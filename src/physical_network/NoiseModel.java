@@ -0,0 +1,23 @@
+package physical_network;
+
+/**
+ * Statistical models for the noise ThermalNoise puts on the wire.
+ */
+public enum NoiseModel {
+
+    /*
+     * Uniformly distributed between -1/2 and 1/2 of the noise level.
+     */
+    UNIFORM,
+
+    /*
+     * Normally distributed with the noise level as the peak-to-peak (6 sigma) spread.
+     */
+    GAUSSIAN,
+
+    /*
+     * Gaussian noise from a two state Markov chain: a 'good' state at the noise
+     * level and a 'bad' state at the burst level, giving bursts of errors.
+     */
+    GILBERT_ELLIOTT
+}
@@ -20,13 +20,22 @@ import org.jfree.ui.RefineryUtilities;
 class Oscilloscope extends Thread {
     
 	private final String deviceName;
-    private final TwistedWirePair wire;
+    private final WireConnection wire;
+    private final SimulationClock clock;
     private final OscilloscopePanel panel;
+
+    // Time between voltage samples in milliseconds.
+    private int samplePeriod = 1;
     
     public Oscilloscope(String deviceName, TwistedWirePair wire) {
+        this(deviceName, wire, new RealTimeClock());
+    }
+
+    public Oscilloscope(String deviceName, TwistedWirePair wire, SimulationClock clock) {
         
     	this.deviceName = deviceName;    	
-        this.wire = wire;
+        this.wire = wire.connect(deviceName);
+        this.clock = clock;
         
         // Create the Oscilloscope panel and make it visible.        
         this.panel = new OscilloscopePanel();  
@@ -36,22 +45,34 @@ class Oscilloscope extends Thread {
         panel.setVisible(true);
     }
 
+    /**
+     * @param millis Time between voltage samples in milliseconds.
+     */
+    public void setSamplePeriod(int millis) {
+        if (millis < 1)
+            throw new IllegalArgumentException("Sample period must be at least 1 ms");
+        this.samplePeriod = millis;
+    }
+
     
     @Override
     public void run() {
         
         try {
+        	clock.attach();
         	
         	while (true) {
                 
-                double voltage = wire.getVoltage(deviceName);                
-                panel.setVoltage(voltage);
+                double voltage = wire.getVoltage();                
+                panel.setVoltage(clock.now(), voltage);
                 
-                sleep(10);
+                clock.sleep(samplePeriod);
             }
 
         } catch (InterruptedException except) {
             System.out.println("Netword Card Interrupted: " + getName());
+        } finally {
+            clock.detach();
         }
         
     }
@@ -35,9 +35,9 @@ package physical_network;
  * in the United States and other countries.]
  *
  */
-import java.util.Date;
+import java.util.Arrays;
 
-import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
@@ -54,11 +54,40 @@ import org.jfree.ui.ApplicationFrame;
 class OscilloscopePanel extends ApplicationFrame {
 
 	private static final long serialVersionUID = 1L;
-	
-	private Date startDate = new Date();
-    private long startTime = startDate.getTime();
+
+    // Length of one sweep in seconds.
+    private static final double SWEEP_TIME = 10.0;
+
+    // Capacity of the sample ring buffer (a power of 2).
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Time between chart updates on the Swing thread in milliseconds.
+    private static final int REFRESH_PERIOD = 100;
+
+    private long startTime = 0;
     private XYSeries voltages = new XYSeries("Voltages");
 
+    /*
+     * Ring buffer of samples filled by the oscilloscope thread. A NaN time marks
+     * the start of a new sweep. Guarded by 'buffer' lock which is only held for
+     * a single write or while the Swing thread drains new samples.
+     */
+    private final transient Object buffer = new Object();
+    private final double[] sampleTimes = new double[BUFFER_SIZE];
+    private final double[] sampleVoltages = new double[BUFFER_SIZE];
+    private long written = 0;
+    private long drained = 0;
+
+    /*
+     * Samples of the current sweep decimated to one (min, max) bucket per pixel.
+     * Only touched on the Swing thread.
+     */
+    private double[] bucketMin = new double[0];
+    private double[] bucketMax = new double[0];
+    private boolean changed = false;
+
+    private final ChartPanel chartPanel;
+
     public OscilloscopePanel() {
 
         super("Oscilloscope");
@@ -95,10 +124,12 @@ class OscilloscopePanel extends ApplicationFrame {
 
         plot.setRenderer(renderer);
 
-        ChartPanel chartPanel = new ChartPanel(chart);
+        chartPanel = new ChartPanel(chart);
         chartPanel.setPreferredSize(new java.awt.Dimension(500, 300));
 
         setContentPane(chartPanel);
+
+        new Timer(REFRESH_PERIOD, event -> refresh()).start();
     }
 
     
@@ -106,27 +137,90 @@ class OscilloscopePanel extends ApplicationFrame {
      * This sets the voltage value at a particular point in term on the oscilloscope.
      * If it sweeps over the end then it resets and goes back to the start.
      * 
+     * The sample is only stored in the ring buffer here; the chart is redrawn
+     * from the buffer on the Swing thread every REFRESH_PERIOD.
+     * 
+     * @param time    Simulation time of the sample in milliseconds.
      * @param voltage Value to set on the oscilloscope.
      */
-    void setVoltage(double voltage) {
+    void setVoltage(long time, double voltage) {
     	
-    	Date currentDate = new Date();
-    	double currentTime = (currentDate.getTime() - startTime) / 1000.0;
-        
-        if (currentTime > 10.0) {
-        	
-        	startTime = currentDate.getTime();
-        	currentTime = 0.0;
-        	
-        	Runnable clearData = new Runnable() {
-                public void run() {
-                	voltages.clear();
+    	double currentTime = (time - startTime) / 1000.0;
+
+        synchronized (buffer) {
+
+            if (currentTime > SWEEP_TIME) {
+
+                startTime = time;
+                currentTime = 0.0;
+
+                write(Double.NaN, 0.0);
+            }
+
+            write(currentTime, voltage);
+        }
+    }
+
+    private void write(double time, double voltage) {
+        int index = (int) (written & (BUFFER_SIZE - 1));
+        sampleTimes[index] = time;
+        sampleVoltages[index] = voltage;
+        written++;
+    }
+
+    /*
+     * Drains new samples into the per-pixel buckets and redraws the chart once.
+     * Samples overwritten before they could be drained are skipped.
+     */
+    private void refresh() {
+
+        int width = Math.max(1, chartPanel.getWidth());
+        if (width != bucketMin.length) {
+            bucketMin = new double[width];
+            bucketMax = new double[width];
+            clearBuckets();
+        }
+
+        synchronized (buffer) {
+            for (long i = Math.max(drained, written - BUFFER_SIZE); i < written; i++) {
+                int index = (int) (i & (BUFFER_SIZE - 1));
+                double time = sampleTimes[index];
+                double voltage = sampleVoltages[index];
+
+                if (Double.isNaN(time)) {
+                    clearBuckets();
+                    continue;
                 }
-            };        	
-        	
-        	SwingUtilities.invokeLater(clearData);
+
+                int bucket = Math.min(width - 1, (int) (time / SWEEP_TIME * width));
+                bucketMin[bucket] = Math.min(bucketMin[bucket], voltage);
+                bucketMax[bucket] = Math.max(bucketMax[bucket], voltage);
+                changed = true;
+            }
+            drained = written;
         }
-        
-        voltages.add(currentTime, voltage);
+
+        if (!changed)
+            return;
+        changed = false;
+
+        // Rebuild the series without a redraw per point, then redraw once.
+        voltages.setNotify(false);
+        voltages.clear();
+        for (int bucket = 0; bucket < width; bucket++) {
+            if (bucketMin[bucket] > bucketMax[bucket])
+                continue;
+            double time = bucket * SWEEP_TIME / width;
+            voltages.add(time, bucketMin[bucket], false);
+            if (bucketMax[bucket] != bucketMin[bucket])
+                voltages.add(time, bucketMax[bucket], false);
+        }
+        voltages.setNotify(true);
+    }
+
+    private void clearBuckets() {
+        Arrays.fill(bucketMin, Double.POSITIVE_INFINITY);
+        Arrays.fill(bucketMax, Double.NEGATIVE_INFINITY);
+        changed = true;
     }
 }
@@ -0,0 +1,61 @@
+package physical_network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Clock paced against the wall clock.
+ * <p>
+ * Every device thread runs freely and sleeps for real, so a simulation using
+ * this clock behaves exactly like the original thread-per-device model.
+ * Useful for demonstrations with the oscilloscope attached.
+ */
+public class RealTimeClock extends SimulationClock {
+
+	private final long startTime = System.nanoTime();
+
+	// Waiting devices park on a lock condition rather than a monitor, so they
+	// do not pin carrier threads when run on virtual threads.
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+
+	public long now() {
+		return (System.nanoTime() - startTime) / 1000000;
+	}
+
+	public void sleep(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+	}
+
+	public boolean waitFor(BooleanSupplier condition, long timeout) throws InterruptedException {
+		lock.lock();
+		try {
+			long deadline = now() + timeout;
+
+			while (!condition.getAsBoolean()) {
+				if (timeout == 0) {
+					changed.await();
+				} else {
+					long remaining = deadline - now();
+					if (remaining <= 0)
+						return false;
+					changed.await(remaining, TimeUnit.MILLISECONDS);
+				}
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void signal() {
+		lock.lock();
+		try {
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
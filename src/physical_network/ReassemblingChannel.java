@@ -0,0 +1,136 @@
+package physical_network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Channel reading a stream of bytes sent to a network card by one device
+ * through a SegmentingChannel.
+ * <p>
+ * The card delivers each device's frames in order and passes those from the
+ * channel's device to the channel alone, so the stream is put back together
+ * by reading their payloads one after another, even while other devices
+ * send to the card. Each frame is released as soon as its payload has been
+ * read, so however long the stream, no more is held than the frame being
+ * read and the channel's queue, which holds the card's receiver back when it
+ * is full. Channels open at once should therefore be read by separate threads.
+ * <p>
+ * read() returns -1 once the frame marked as the end of the stream has been
+ * read. A frame the sender gave up on leaves a gap in the frame numbers, or
+ * a frame marked for the receiver to skip it, so once the stream has begun
+ * either makes read() throw an IOException, as the stream is incomplete.
+ * Obtained from NetworkCard.openInputChannel(). Used by one thread at a time.
+ */
+public class ReassemblingChannel implements ReadableByteChannel {
+
+	private final NetworkCard card;
+	private final int source;
+
+	// Frame being read (null between frames) and the unread part of its payload.
+	private DataFrame frame;
+	private ByteBuffer payload;
+
+	// Whether the last frame of the stream has been taken from the card.
+	private boolean ended = false;
+
+	// Frame number of the last frame taken from the card (-1 before the first).
+	private int frameNumber = -1;
+
+	// Whether frames are missing from the stream.
+	private boolean broken = false;
+
+	private boolean open = true;
+
+	ReassemblingChannel(NetworkCard card, int source) {
+		this.card = card;
+		this.source = source;
+	}
+
+	/*
+	 * Reads bytes into dst, waiting for a frame if none are available yet.
+	 * Once any bytes have been read it returns rather than waiting for more.
+	 *
+	 * @return Number of bytes read, or -1 at the end of the stream.
+	 */
+	public int read(ByteBuffer dst) throws IOException {
+		if (!open)
+			throw new ClosedChannelException();
+
+		int read = 0;
+		while (dst.hasRemaining()) {
+			if (payload == null || !payload.hasRemaining()) {
+				if (read > 0)
+					break;
+				if (!nextFrame())
+					return -1;
+				continue;
+			}
+
+			int count = Math.min(dst.remaining(), payload.remaining());
+			dst.put(dst.position(), payload, payload.position(), count);
+			dst.position(dst.position() + count);
+			payload.position(payload.position() + count);
+			read += count;
+		}
+		return read;
+	}
+
+	public boolean isOpen() {
+		return open;
+	}
+
+	public void close() {
+		if (!open)
+			return;
+		open = false;
+		releaseFrame();
+		card.closeInputChannel(source);
+	}
+
+	/*
+	 * Releases the frame just read and takes the next one from the card.
+	 *
+	 * @return false if the stream has ended.
+	 */
+	private boolean nextFrame() throws IOException {
+		releaseFrame();
+		if (ended)
+			return false;
+		if (broken)
+			throw missingFrames();
+
+		try {
+			frame = card.receive(source);
+		} catch (InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a frame");
+		}
+
+		int previous = frameNumber;
+		frameNumber = frame.getFrameNumber();
+		if (previous >= 0 && (frame.isSync() || frameNumber != (previous + 1) % DataFrame.SEQUENCE_SPACE)) {
+			broken = true;
+			releaseFrame();
+			throw missingFrames();
+		}
+
+		payload = frame.getPayloadBuffer();
+		ended = frame.isEndOfStream();
+		return true;
+	}
+
+	private IOException missingFrames() {
+		return new IOException("Frames from device " + source + " are missing from the stream");
+	}
+
+	private void releaseFrame() {
+		if (frame != null) {
+			frame.release();
+			frame = null;
+			payload = null;
+		}
+	}
+}
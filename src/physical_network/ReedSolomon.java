@@ -0,0 +1,227 @@
+package physical_network;
+
+import java.util.Arrays;
+
+/**
+ * Reed-Solomon code over GF(256), used by ErrorCorrection.REED_SOLOMON.
+ * <p>
+ * A frame is split into blocks of up to MAX_DATA bytes and PARITY check bytes
+ * are added after each, so each block is a (shortened) RS(255, 247) code word.
+ * Up to PARITY / 2 bytes in a block can be corrected however many of their
+ * bits are wrong, so it suits bursts of errors, for a few bytes per frame.
+ * <p>
+ * Decoding finds the errors with the Berlekamp-Massey algorithm, locates them
+ * with a Chien search and works out their values with Forney's formula.
+ */
+final class ReedSolomon {
+
+	// Check bytes added to each block, and the most data bytes a block holds.
+	static final int PARITY = 8;
+	static final int MAX_DATA = 255 - PARITY;
+
+	// Powers of the generator element (doubled so products need no modulo) and their logarithms,
+	// for the field with primitive polynomial x^8 + x^4 + x^3 + x^2 + 1.
+	private static final int[] EXP = new int[512];
+	private static final int[] LOG = new int[256];
+
+	// Generator polynomial (x - 1)(x - a)...(x - a^(PARITY - 1)), highest power first.
+	private static final int[] GENERATOR = new int[PARITY + 1];
+
+	static {
+		int value = 1;
+		for (int i = 0; i < 255; i++) {
+			EXP[i] = value;
+			LOG[value] = i;
+			value <<= 1;
+			if (value > 0xFF)
+				value ^= 0x11D;
+		}
+		for (int i = 255; i < EXP.length; i++)
+			EXP[i] = EXP[i - 255];
+
+		GENERATOR[0] = 1;
+		for (int root = 0; root < PARITY; root++) {
+			for (int i = root + 1; i > 0; i--)
+				GENERATOR[i] ^= multiply(GENERATOR[i - 1], EXP[root]);
+		}
+	}
+
+	private ReedSolomon() {
+	}
+
+	static int encodedLength(int length) {
+		return length + PARITY * Math.max(1, (length + MAX_DATA - 1) / MAX_DATA);
+	}
+
+	/*
+	 * Codes the first 'length' bytes of a frame into 'out', each block of data followed by its check bytes.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	static int encode(byte[] frame, int length, byte[] out) {
+		int written = 0;
+		int offset = 0;
+		do {
+			int count = Math.min(MAX_DATA, length - offset);
+			System.arraycopy(frame, offset, out, written, count);
+
+			// Remainder of the block times x^PARITY divided by the generator, by long division.
+			int parity = written + count;
+			Arrays.fill(out, parity, parity + PARITY, (byte) 0);
+			for (int i = 0; i < count; i++) {
+				int feedback = (frame[offset + i] ^ out[parity]) & 0xFF;
+				System.arraycopy(out, parity + 1, out, parity, PARITY - 1);
+				out[parity + PARITY - 1] = 0;
+				if (feedback != 0) {
+					for (int j = 0; j < PARITY; j++)
+						out[parity + j] ^= (byte) multiply(GENERATOR[j + 1], feedback);
+				}
+			}
+
+			written = parity + PARITY;
+			offset += count;
+		} while (offset < length);
+		return written;
+	}
+
+	/*
+	 * Corrects the received bytes of a frame in place and copies its data into 'out'.
+	 *
+	 * @return Number of bytes written to 'out', or -1 if a block has too many
+	 *         errors to correct or the frame does not fit in 'out'.
+	 */
+	static int decode(byte[] received, int length, byte[] out) {
+		int written = 0;
+		int offset = 0;
+		while (offset < length) {
+			int blockLength = Math.min(MAX_DATA + PARITY, length - offset);
+			int count = blockLength - PARITY;
+			if (count < 0 || written + count > out.length || !correct(received, offset, blockLength))
+				return -1;
+
+			System.arraycopy(received, offset, out, written, count);
+			written += count;
+			offset += blockLength;
+		}
+		return (length == 0) ? -1 : written;
+	}
+
+	/*
+	 * Copies the start of the first block of a frame still being received,
+	 * without correcting it, as far as it can hold data.
+	 *
+	 * @return Number of bytes written to 'out'.
+	 */
+	static int decodePrefix(byte[] received, int length, byte[] out) {
+		int count = Math.min(Math.min(length, MAX_DATA), out.length);
+		System.arraycopy(received, 0, out, 0, count);
+		return count;
+	}
+
+	/*
+	 * Corrects a code word in place.
+	 *
+	 * @return false if it has more errors than can be corrected.
+	 */
+	private static boolean correct(byte[] block, int offset, int length) {
+
+		// Syndromes: the received word evaluated at each root of the generator.
+		int[] syndromes = new int[PARITY];
+		boolean clean = true;
+		for (int j = 0; j < PARITY; j++) {
+			int syndrome = 0;
+			for (int i = 0; i < length; i++)
+				syndrome = multiply(syndrome, EXP[j]) ^ (block[offset + i] & 0xFF);
+			syndromes[j] = syndrome;
+			clean &= syndrome == 0;
+		}
+		if (clean)
+			return true;
+
+		// Berlekamp-Massey: the shortest error locator polynomial giving the syndromes (lowest power first).
+		int[] locator = new int[PARITY + 1];
+		int[] previous = new int[PARITY + 1];
+		locator[0] = 1;
+		previous[0] = 1;
+		int errors = 0;
+		int shift = 1;
+		int previousDiscrepancy = 1;
+
+		for (int n = 0; n < PARITY; n++) {
+			int discrepancy = syndromes[n];
+			for (int i = 1; i <= errors; i++)
+				discrepancy ^= multiply(locator[i], syndromes[n - i]);
+
+			if (discrepancy == 0) {
+				shift++;
+				continue;
+			}
+
+			int[] saved = (2 * errors <= n) ? locator.clone() : null;
+			int scale = divide(discrepancy, previousDiscrepancy);
+			for (int i = shift; i <= PARITY; i++)
+				locator[i] ^= multiply(scale, previous[i - shift]);
+
+			if (saved != null) {
+				errors = n + 1 - errors;
+				previous = saved;
+				previousDiscrepancy = discrepancy;
+				shift = 1;
+			} else {
+				shift++;
+			}
+		}
+		if (errors > PARITY / 2)
+			return false;
+
+		// Error evaluator: syndromes times locator, up to x^(PARITY - 1).
+		int[] evaluator = new int[PARITY];
+		for (int k = 0; k < PARITY; k++) {
+			for (int i = 0; i <= k; i++)
+				evaluator[k] ^= multiply(locator[i], syndromes[k - i]);
+		}
+
+		// Chien search for the locator's roots, which give the error positions, then Forney's formula.
+		int found = 0;
+		for (int i = 0; i < length; i++) {
+			int power = length - 1 - i;
+			int inverse = EXP[(255 - power) % 255];
+			if (evaluate(locator, inverse) != 0)
+				continue;
+
+			// Formal derivative of the locator: only its odd powers remain.
+			int derivative = 0;
+			for (int k = 1; k <= errors; k += 2)
+				derivative ^= multiply(locator[k], power(inverse, k - 1));
+			if (derivative == 0)
+				return false;
+
+			int magnitude = multiply(EXP[power], divide(evaluate(evaluator, inverse), derivative));
+			block[offset + i] ^= (byte) magnitude;
+			found++;
+		}
+		return found == errors;
+	}
+
+	/*
+	 * Value of a polynomial (lowest power first) at x.
+	 */
+	private static int evaluate(int[] polynomial, int x) {
+		int value = 0;
+		for (int i = polynomial.length - 1; i >= 0; i--)
+			value = multiply(value, x) ^ polynomial[i];
+		return value;
+	}
+
+	private static int multiply(int a, int b) {
+		return (a == 0 || b == 0) ? 0 : EXP[LOG[a] + LOG[b]];
+	}
+
+	private static int divide(int a, int b) {
+		return (a == 0) ? 0 : EXP[LOG[a] + 255 - LOG[b]];
+	}
+
+	private static int power(int a, int n) {
+		return (n == 0) ? 1 : (a == 0) ? 0 : EXP[(LOG[a] * n) % 255];
+	}
+}
@@ -0,0 +1,145 @@
+package physical_network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A wire which plays back a trace recorded by WireTraceRecorder.
+ * <p>
+ * The recorded wire voltage is reproduced at the recorded simulation times
+ * by a player thread running on the clock, so a network card attached to this
+ * wire receives exactly what was on the wire during the original run - without
+ * the sender or noise devices. With a VirtualClock this runs at full CPU speed.
+ * <p>
+ * Voltages set by devices attached to this wire are ignored.
+ */
+public class ReplayTwistedWirePair implements TwistedWirePair {
+
+	private final ByteBuffer trace;
+	private final SimulationClock clock;
+	private final List<String> devices = new ArrayList<String>();
+
+	private volatile double voltage = 0.0;
+	private volatile VoltageListener[] listeners = new VoltageListener[0];
+
+	private final Thread player = new Thread("Trace Player") {
+		@Override
+		public void run() {
+			try {
+				clock.attach();
+				play();
+			} catch (InterruptedException except) {
+				System.out.println("Trace Player Interrupted: " + getName());
+			} finally {
+				clock.detach();
+			}
+		}
+	};
+
+	/**
+	 * @param file  Trace file written by WireTraceRecorder.
+	 * @param clock Clock to play the trace back against.
+	 */
+	public ReplayTwistedWirePair(Path file, SimulationClock clock) throws IOException {
+		this.clock = clock;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Wire trace too large to replay: " + file);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			this.trace = mapped;
+		}
+
+		if (trace.remaining() < 6 || trace.getInt() != WireTraceRecorder.MAGIC)
+			throw new IOException("Not a wire trace: " + file);
+		if (trace.getShort() != WireTraceRecorder.VERSION)
+			throw new IOException("Unsupported wire trace version: " + file);
+	}
+
+	/**
+	 * Starts playing the trace back from the current clock time.
+	 */
+	public void start() {
+		clock.start(player);
+	}
+
+	/**
+	 * @return Names of the devices seen in the trace so far, indexed by slot.
+	 */
+	public synchronized List<String> getDevices() {
+		return new ArrayList<String>(devices);
+	}
+
+	/*
+	 * Sets each recorded wire voltage at its recorded time.
+	 */
+	private void play() throws InterruptedException {
+		long offset = clock.now();
+
+		while (trace.remaining() >= 8 + 4) {
+			long time = trace.getLong() + offset;
+			int slot = trace.getInt();
+
+			if (slot < 0) {
+				byte[] name = new byte[trace.getShort()];
+				trace.get(name);
+				deviceConnected(-slot - 1, new String(name, StandardCharsets.UTF_8));
+				continue;
+			}
+
+			trace.getDouble(); // Device voltage is not needed for playback.
+			double wireVoltage = trace.getDouble();
+
+			long delay = time - clock.now();
+			if (delay > 0)
+				clock.sleep(delay);
+
+			double previous = voltage;
+			voltage = wireVoltage;
+			for (VoltageListener listener : listeners)
+				listener.voltageChanged(previous, wireVoltage);
+		}
+	}
+
+	private synchronized void deviceConnected(int slot, String device) {
+		while (devices.size() <= slot)
+			devices.add(null);
+		devices.set(slot, device);
+	}
+
+	public void setVoltage(String device, double voltage) {
+	}
+
+	public double getVoltage(String device) {
+		return voltage;
+	}
+
+	@Override
+	public synchronized boolean addVoltageListener(VoltageListener listener) {
+		VoltageListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+		updated[listeners.length] = listener;
+		listeners = updated;
+		return true;
+	}
+
+	@Override
+	public synchronized void removeVoltageListener(VoltageListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				VoltageListener[] updated = new VoltageListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, updated, 0, i);
+				System.arraycopy(listeners, i + 1, updated, i, updated.length - i);
+				listeners = updated;
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package physical_network;
+
+/**
+ * Retransmission timeout for frames sent to one device, adapted to the
+ * round trip times measured for it (Jacobson/Karels, as in RFC 6298).
+ * <p>
+ * The timeout is the smoothed round trip time plus four times its mean
+ * deviation. It doubles when frames time out, at most once per timeout
+ * period since frames sent together time out together, and stays backed
+ * off until a round trip time is measured again. Following Karn's rule, callers
+ * only measure frames which were sent once, since an acknowledgement of a
+ * retransmitted frame cannot be matched to a particular transmission.
+ */
+final class RetransmissionTimer {
+
+	// Gains for the smoothed round trip time and its deviation.
+	private static final double ALPHA = 1.0 / 8;
+	private static final double BETA = 1.0 / 4;
+
+	private final long minTimeout;
+	private final long maxTimeout;
+
+	private double smoothedRtt = -1;
+	private double rttVariation;
+	private long timeout;
+
+	// Time before which further timeouts do not back off again.
+	private long backedOffUntil = Long.MIN_VALUE;
+
+	/*
+	 * @param initialTimeout Timeout used until a round trip time has been measured.
+	 * @param minTimeout     Shortest timeout the estimate may give.
+	 * @param maxTimeout     Longest timeout, which backing off stops at.
+	 */
+	RetransmissionTimer(long initialTimeout, long minTimeout, long maxTimeout) {
+		this.minTimeout = minTimeout;
+		this.maxTimeout = maxTimeout;
+		this.timeout = initialTimeout;
+	}
+
+	/*
+	 * Current retransmission timeout in milliseconds.
+	 */
+	long timeout() {
+		return timeout;
+	}
+
+	/*
+	 * Updates the estimate with a measured round trip time in milliseconds.
+	 */
+	void sample(long rtt) {
+		if (smoothedRtt < 0) {
+			smoothedRtt = rtt;
+			rttVariation = rtt / 2.0;
+		} else {
+			rttVariation = (1 - BETA) * rttVariation + BETA * Math.abs(smoothedRtt - rtt);
+			smoothedRtt = (1 - ALPHA) * smoothedRtt + ALPHA * rtt;
+		}
+		timeout = Math.min(maxTimeout, Math.max(minTimeout, (long) Math.ceil(smoothedRtt + 4 * rttVariation)));
+	}
+
+	/*
+	 * Doubles the timeout after a frame has timed out at the given time.
+	 */
+	void backOff(long now) {
+		if (now < backedOffUntil)
+			return;
+		timeout = Math.min(maxTimeout, timeout * 2);
+		backedOffUntil = now + timeout;
+	}
+}
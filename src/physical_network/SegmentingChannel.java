@@ -0,0 +1,139 @@
+package physical_network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Channel sending a stream of bytes from a network card to one device.
+ * <p>
+ * Bytes written are gathered into a segment, and each full segment is sent
+ * as a data frame, so a stream of any length goes out as frames of at most
+ * MAX_PAYLOAD_SIZE bytes. Segments are sent with sendAsync(), and sending
+ * only waits once more are unacknowledged than the card's window and output
+ * queue hold, so the card keeps as many frames in flight as its window
+ * allows while the writer carries on.
+ * <p>
+ * flush() sends a partly filled segment straight away. close() sends the
+ * rest of the stream in a frame marked as its last, which ends the stream
+ * read by the receiving card's ReassemblingChannel, and waits until every
+ * segment has been acknowledged. A segment the card gives up on leaves a
+ * hole in the stream, so the next write(), flush() or close() throws an
+ * IOException and the channel is closed.
+ * <p>
+ * Obtained from NetworkCard.openOutputChannel(). Used by one thread at a time.
+ */
+public class SegmentingChannel implements WritableByteChannel {
+
+	private final NetworkCard card;
+	private final int destination;
+
+	// Bytes written but not sent yet.
+	private final ByteBuffer segment;
+
+	// Receipts of the segments sent and not yet acknowledged, oldest first.
+	private final ArrayDeque<CompletableFuture<DeliveryReceipt>> unacknowledged = new ArrayDeque<CompletableFuture<DeliveryReceipt>>();
+
+	private boolean open = true;
+
+	SegmentingChannel(NetworkCard card, int destination, int segmentSize) {
+		this.card = card;
+		this.destination = destination;
+		this.segment = ByteBuffer.allocate(segmentSize);
+	}
+
+	/*
+	 * Takes every remaining byte of src, sending each segment it fills.
+	 * Waits while too many segments are unacknowledged.
+	 */
+	public int write(ByteBuffer src) throws IOException {
+		if (!open)
+			throw new ClosedChannelException();
+
+		int written = src.remaining();
+		while (src.hasRemaining()) {
+			int count = Math.min(src.remaining(), segment.remaining());
+			segment.put(segment.position(), src, src.position(), count);
+			segment.position(segment.position() + count);
+			src.position(src.position() + count);
+
+			if (!segment.hasRemaining())
+				sendSegment(false);
+		}
+		return written;
+	}
+
+	/*
+	 * Sends the bytes written since the last segment was sent, if there are any.
+	 */
+	public void flush() throws IOException {
+		if (!open)
+			throw new ClosedChannelException();
+		if (segment.position() > 0)
+			sendSegment(false);
+	}
+
+	public boolean isOpen() {
+		return open;
+	}
+
+	/*
+	 * Sends the last segment of the stream, marked as its end (even if it is
+	 * empty), and waits until every segment has been acknowledged.
+	 */
+	public void close() throws IOException {
+		if (!open)
+			return;
+		open = false;
+		sendSegment(true);
+		awaitAcknowledged(0);
+	}
+
+	private void sendSegment(boolean last) throws IOException {
+		segment.flip();
+		DataFrame frame = new DataFrame(segment, destination);
+		segment.clear();
+
+		frame.setEndOfStream(last);
+		checkDelivered();
+		unacknowledged.add(card.sendAsync(frame));
+		awaitAcknowledged(card.sendAhead());
+	}
+
+	/*
+	 * Waits until no more than a number of segments are unacknowledged.
+	 */
+	private void awaitAcknowledged(int limit) throws IOException {
+		try {
+			while (unacknowledged.size() > limit) {
+				card.await(unacknowledged.peek());
+				checkDelivered();
+			}
+		} catch (InterruptedException except) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted sending to device " + destination);
+		}
+	}
+
+	/*
+	 * Drops the receipts of the oldest segments once they have been acknowledged.
+	 *
+	 * @throws IOException if the card gave up on one of them.
+	 */
+	private void checkDelivered() throws IOException {
+		CompletableFuture<DeliveryReceipt> receipt;
+		while ((receipt = unacknowledged.peek()) != null && receipt.isDone()) {
+			unacknowledged.poll();
+			DeliveryReceipt done = receipt.join();
+			if (!done.isDelivered()) {
+				open = false;
+				throw new IOException("Frame " + done.getFrameNumber() + " of the stream was not delivered to device "
+						+ destination);
+			}
+		}
+	}
+}
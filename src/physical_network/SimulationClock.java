@@ -0,0 +1,88 @@
+package physical_network;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Source of time for every device attached to a wire.
+ * <p>
+ * Devices never call Thread.sleep() or Object.wait() directly. Instead they
+ * sleep on the clock and wait on clock conditions, which allows the same
+ * device code to run either paced against the wall clock (RealTimeClock) or
+ * as a deterministic discrete-event simulation (VirtualClock).
+ * <p>
+ * Device threads should be started with start() and call attach() at the
+ * beginning and detach() at the end of their run() method.
+ */
+public abstract class SimulationClock {
+
+	/**
+	 * @return Current simulation time in milliseconds.
+	 */
+	public abstract long now();
+
+	/**
+	 * Blocks the calling device for a period of simulation time.
+	 *
+	 * @param millis Simulation time to sleep for in milliseconds.
+	 */
+	public abstract void sleep(long millis) throws InterruptedException;
+
+	/**
+	 * Blocks the calling device until the condition holds or the timeout expires.
+	 * The condition is re-tested every time signal() is called, so any thread
+	 * changing state that a condition depends on must call signal() afterwards.
+	 *
+	 * @param condition Condition to wait for.
+	 * @param timeout   Simulation time to wait for in milliseconds (0 waits forever).
+	 * @return The value of the condition when the wait finished.
+	 */
+	public abstract boolean waitFor(BooleanSupplier condition, long timeout) throws InterruptedException;
+
+	/**
+	 * Wakes all devices blocked in waitFor() so that they re-test their conditions.
+	 */
+	public abstract void signal();
+
+	/**
+	 * Blocks the calling device until the condition holds or the timeout expires,
+	 * like waitFor(condition, timeout), but the condition need only be re-tested
+	 * when the given channel is signalled. Devices which share a clock but not
+	 * state should wait on channels, so they are not woken by each other's changes.
+	 *
+	 * @param channel   Object whose state the condition depends on.
+	 * @param condition Condition to wait for.
+	 * @param timeout   Simulation time to wait for in milliseconds (0 waits forever).
+	 * @return The value of the condition when the wait finished.
+	 */
+	public boolean waitFor(Object channel, BooleanSupplier condition, long timeout) throws InterruptedException {
+		return waitFor(condition, timeout);
+	}
+
+	/**
+	 * Wakes the devices waiting on a channel so that they re-test their conditions.
+	 *
+	 * @param channel Object whose state has changed.
+	 */
+	public void signal(Object channel) {
+		signal();
+	}
+
+	/**
+	 * Starts a device thread under the control of this clock.
+	 */
+	public void start(Thread thread) {
+		thread.start();
+	}
+
+	/**
+	 * Called by a device thread at the start of its run() method.
+	 */
+	public void attach() throws InterruptedException {
+	}
+
+	/**
+	 * Called by a device thread when its run() method finishes.
+	 */
+	public void detach() {
+	}
+}
@@ -7,9 +7,15 @@
 
 package physical_network;
 
+import java.util.Random;
+
 /**
  * 
  * This models thermal noise at a particular voltage level on the wire.
+ * 
+ * A new noise sample is put on the wire once every sample period. Samples come
+ * from a seeded xorshift generator (and a precomputed table for Gaussian noise),
+ * so runs are reproducible and generating noise allocates nothing.
  *
  * @author K. Bryson
  */
@@ -21,8 +27,26 @@ public class ThermalNoise extends Thread {
 	// Thermal noise level in volts.
     private final double noiseLevel;
 
-    // Shared wire object to add the thermal noise to.
-    private final TwistedWirePair wire;
+    // Connection to the shared wire object to add the thermal noise to.
+    private final WireConnection wire;
+
+    // Clock that the noise samples are timed against.
+    private final SimulationClock clock;
+
+    // Size of the precomputed table of standard normal samples (indexed by 16 random bits).
+    private static final int GAUSSIAN_TABLE_SIZE = 1 << 16;
+
+    // Time between noise samples in milliseconds.
+    private int samplePeriod = 1;
+
+    private NoiseModel model = NoiseModel.UNIFORM;
+
+    // Gilbert-Elliott state change probabilities (per sample) and noise level in the bad state.
+    private double goodToBad = 0.001;
+    private double badToGood = 0.05;
+    private double burstLevel = 5.0;
+
+    private long seed = System.nanoTime();
     
     
     /**
@@ -31,9 +55,53 @@ public class ThermalNoise extends Thread {
      * @param wire       This is the shared wire that this network card is connected to.
      */
     public ThermalNoise(String deviceName, double noiseLevel, TwistedWirePair wire) {
+        this(deviceName, noiseLevel, wire, new RealTimeClock());
+    }
+
+    /**
+     * @param deviceName This provides the name of this device, i.e. "Network Card A".
+     * @param noiseLevel The peak-to-peak noise level to set in volts.
+     * @param wire       This is the shared wire that this network card is connected to.
+     * @param clock      This is the clock that noise samples are timed against.
+     */
+    public ThermalNoise(String deviceName, double noiseLevel, TwistedWirePair wire, SimulationClock clock) {
     	this.deviceName = deviceName;
         this.noiseLevel = noiseLevel;
-        this.wire = wire;
+        this.wire = wire.connect(deviceName);
+        this.clock = clock;
+    }
+
+    /**
+     * @param millis Time between noise samples in milliseconds (the inverse of the sample rate).
+     */
+    public void setSamplePeriod(int millis) {
+        if (millis < 1)
+            throw new IllegalArgumentException("Sample period must be at least 1 ms");
+        this.samplePeriod = millis;
+    }
+
+    public void setModel(NoiseModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Sets the parameters of the Gilbert-Elliott model.
+     *
+     * @param goodToBad  Probability per sample of a burst starting.
+     * @param badToGood  Probability per sample of a burst ending.
+     * @param burstLevel The peak-to-peak noise level during a burst in volts.
+     */
+    public void setBursts(double goodToBad, double badToGood, double burstLevel) {
+        this.goodToBad = goodToBad;
+        this.badToGood = badToGood;
+        this.burstLevel = burstLevel;
+    }
+
+    /**
+     * @param seed Seed for the noise generator, so that a run can be reproduced.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
     }
     
     /**
@@ -43,9 +111,61 @@ public class ThermalNoise extends Thread {
     @Override
     public void run() {
 
-        while (true) {
-            wire.setVoltage(deviceName, (Math.random() - 0.5) * noiseLevel);
+        try {
+            clock.attach();
+
+            // Nothing to do on a quiet wire.
+            if (noiseLevel == 0 && (model != NoiseModel.GILBERT_ELLIOTT || burstLevel == 0))
+                return;
+
+            double[] gaussian = (model == NoiseModel.UNIFORM) ? null : gaussianTable(seed);
+            long state = seed ^ 0x9E3779B97F4A7C15L;
+            if (state == 0)
+                state = 1;
+            boolean burst = false;
+
+            while (true) {
+                // xorshift64* step.
+                state ^= state >>> 12;
+                state ^= state << 25;
+                state ^= state >>> 27;
+                long random = state * 0x2545F4914F6CDD1DL;
+
+                double voltage;
+                if (model == NoiseModel.UNIFORM) {
+                    voltage = (uniform(random) - 0.5) * noiseLevel;
+                } else {
+                    // Table index from the top 16 bits, state change from the other 48.
+                    if (model == NoiseModel.GILBERT_ELLIOTT)
+                        burst = uniform(random << 16) < (burst ? 1 - badToGood : goodToBad);
+                    double level = burst ? burstLevel : noiseLevel;
+                    voltage = gaussian[(int) (random >>> 48)] * level / 6;
+                }
+
+                wire.setVoltage(voltage);
+                clock.sleep(samplePeriod);
+            }
+
+        } catch (InterruptedException except) {
+            System.out.println("Thermal Noise Interrupted: " + getName());
+        } finally {
+            clock.detach();
         }
         
     }
+
+    /*
+     * Value in [0, 1) from the top 53 bits of a random long.
+     */
+    private static double uniform(long random) {
+        return (random >>> 11) * 0x1.0p-53;
+    }
+
+    private static double[] gaussianTable(long seed) {
+        Random random = new Random(seed);
+        double[] table = new double[GAUSSIAN_TABLE_SIZE];
+        for (int i = 0; i < table.length; i++)
+            table[i] = random.nextGaussian();
+        return table;
+    }
 }
@@ -0,0 +1,87 @@
+package physical_network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes a network of wire segments with hosts on them, joined by bridges,
+ * all timed against one clock.
+ * <p>
+ * Segments, hosts and bridges are added in any order and can be configured
+ * through the objects returned; init() then starts every card and bridge.
+ * Segments must not be joined in a loop, as bridges here do not run a
+ * spanning tree protocol and flooded frames would circulate forever.
+ */
+public class Topology {
+
+	private final SimulationClock clock;
+
+	private final List<TwistedWirePair> segments = new ArrayList<TwistedWirePair>();
+	private final List<NetworkCard> hosts = new ArrayList<NetworkCard>();
+	private final List<Bridge> bridges = new ArrayList<Bridge>();
+
+	public Topology(SimulationClock clock) {
+		this.clock = clock;
+	}
+
+	/*
+	 * Adds a wire segment with room for the given number of devices.
+	 */
+	public TwistedWirePair addSegment(int maxDevices) {
+		TwistedWirePair segment = new MyTwistedWirePair(maxDevices);
+		segments.add(segment);
+		return segment;
+	}
+
+	public TwistedWirePair addSegment() {
+		TwistedWirePair segment = new MyTwistedWirePair();
+		segments.add(segment);
+		return segment;
+	}
+
+	/*
+	 * Adds a network card to a segment.
+	 *
+	 * @param number Device number, unique across the whole topology (0 - 255).
+	 */
+	public NetworkCard addHost(int number, TwistedWirePair segment) {
+		NetworkCard host = new NetworkCard(number, segment, clock);
+		hosts.add(host);
+		return host;
+	}
+
+	/*
+	 * Adds a bridge with a port on each of the given segments.
+	 */
+	public Bridge addBridge(ForwardingMode mode, TwistedWirePair... joined) {
+		Bridge bridge = new Bridge("Bridge" + (bridges.size() + 1), mode, clock, joined);
+		bridges.add(bridge);
+		return bridge;
+	}
+
+	/*
+	 * Starts every host and bridge.
+	 */
+	public void init() {
+		for (Bridge bridge : bridges)
+			bridge.init();
+		for (NetworkCard host : hosts)
+			host.init();
+	}
+
+	public List<TwistedWirePair> getSegments() {
+		return segments;
+	}
+
+	public List<NetworkCard> getHosts() {
+		return hosts;
+	}
+
+	public List<Bridge> getBridges() {
+		return bridges;
+	}
+
+	public SimulationClock getClock() {
+		return clock;
+	}
+}
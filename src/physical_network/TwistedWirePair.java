@@ -36,4 +36,33 @@ public interface TwistedWirePair {
      */
     public double getVoltage(String device);
 
+    /**
+     * Connects a device to the wire.
+     * Devices which set voltages often should use the returned connection
+     * rather than the name based methods above.
+     * 
+     * @param device The device being connected to the wire.
+     * @return Connection the device can set and test voltages through.
+     */
+    public default WireConnection connect(String device) {
+        return new WireConnection(this, device);
+    }
+
+    /**
+     * Registers a listener to be told about every change in voltage, so devices
+     * can wait for a voltage transition rather than polling the wire.
+     * 
+     * @param listener Listener to notify.
+     * @return false if this wire cannot notify listeners (devices must then poll).
+     */
+    public default boolean addVoltageListener(VoltageListener listener) {
+        return false;
+    }
+
+    /**
+     * @param listener Listener to stop notifying.
+     */
+    public default void removeVoltageListener(VoltageListener listener) {
+    }
+
 }
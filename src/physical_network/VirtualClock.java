@@ -0,0 +1,314 @@
+package physical_network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Discrete-event clock which runs the simulation as fast as the CPU allows.
+ * <p>
+ * Only one attached device thread runs at any time. When the running device
+ * sleeps or waits, its wake-up is put on an event queue ordered by simulation
+ * time (ties are broken by the order in which they were scheduled) and the
+ * earliest event is dispatched, advancing the clock to its time.
+ * Since devices never run concurrently the result of a run is deterministic.
+ * <p>
+ * The clock acts as a shared scheduler for its devices: the running device
+ * hands over directly to the next one, which is the only thread unparked, and
+ * a signal only wakes devices waiting on its channel. Each event therefore
+ * costs the same however many devices are attached, so one process can
+ * simulate many thousands of network cards. Parked devices hold no monitors,
+ * so they do not pin carrier threads when run on virtual threads.
+ * <p>
+ * The thread which creates the clock holds it until it first sleeps or waits,
+ * so a scenario can be set up (cards started, frames queued) at time zero.
+ */
+public class VirtualClock extends SimulationClock {
+
+	/*
+	 * A scheduled wake-up for a device thread.
+	 */
+	private static class Wakeup implements Comparable<Wakeup> {
+		final long time;
+		final long sequence;
+		final Thread thread;
+		boolean cancelled = false;
+
+		Wakeup(long time, long sequence, Thread thread) {
+			this.time = time;
+			this.sequence = sequence;
+			this.thread = thread;
+		}
+
+		public int compareTo(Wakeup other) {
+			if (time != other.time)
+				return Long.compare(time, other.time);
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+
+	/*
+	 * A device blocked in waitFor(), with its timeout wake-up (null if waiting forever).
+	 */
+	private static class Waiter {
+		final Thread thread;
+		final Object channel;
+		final Wakeup timeout;
+
+		Waiter(Thread thread, Object channel, Wakeup timeout) {
+			this.thread = thread;
+			this.channel = channel;
+			this.timeout = timeout;
+		}
+	}
+
+	// Guards all the state below. Released while a device is parked.
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final PriorityQueue<Wakeup> events = new PriorityQueue<Wakeup>();
+
+	// Devices blocked in waitFor(), by channel in the order the channels were first
+	// waited on (so signal() wakes them in a repeatable order) and by thread.
+	private final LinkedHashMap<Object, ArrayList<Waiter>> channels = new LinkedHashMap<Object, ArrayList<Waiter>>();
+	private final HashMap<Thread, Waiter> waiters = new HashMap<Thread, Waiter>();
+
+	private final Set<Thread> attached = new HashSet<Thread>();
+
+	private volatile long now = 0;
+	private long sequence = 0;
+
+	// Device thread currently allowed to run (null when the simulation is idle).
+	private volatile Thread running;
+
+	public VirtualClock() {
+		running = Thread.currentThread();
+		attached.add(running);
+	}
+
+	public long now() {
+		return now;
+	}
+
+	public void sleep(long millis) throws InterruptedException {
+		lock.lock();
+		try {
+			acquire();
+			schedule(now + Math.max(0, millis), Thread.currentThread());
+			park();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean waitFor(BooleanSupplier condition, long timeout) throws InterruptedException {
+		return waitFor(this, condition, timeout);
+	}
+
+	@Override
+	public boolean waitFor(Object channel, BooleanSupplier condition, long timeout) throws InterruptedException {
+		lock.lock();
+		try {
+			acquire();
+			long deadline = now + timeout;
+
+			while (!condition.getAsBoolean()) {
+				if (timeout != 0 && now >= deadline)
+					return false;
+
+				Thread current = Thread.currentThread();
+				Waiter waiter = new Waiter(current, channel, timeout == 0 ? null : schedule(deadline, current));
+				channels.computeIfAbsent(channel, key -> new ArrayList<Waiter>()).add(waiter);
+				waiters.put(current, waiter);
+				park();
+
+				// Woken by the timeout rather than a signal.
+				removeWaiting(current);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void signal() {
+		lock.lock();
+		try {
+			for (ArrayList<Waiter> waiting : channels.values())
+				wake(waiting);
+			channels.clear();
+			waiters.clear();
+
+			if (running == null)
+				dispatch();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void signal(Object channel) {
+		lock.lock();
+		try {
+			ArrayList<Waiter> waiting = channels.remove(channel);
+			if (waiting != null) {
+				wake(waiting);
+				for (Waiter waiter : waiting)
+					waiters.remove(waiter.thread);
+			}
+
+			if (running == null)
+				dispatch();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void start(Thread thread) {
+		lock.lock();
+		try {
+			attached.add(thread);
+			schedule(now, thread);
+			thread.start();
+
+			if (running == null)
+				dispatch();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void attach() throws InterruptedException {
+		lock.lock();
+		try {
+			acquire();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void detach() {
+		lock.lock();
+		try {
+			Thread current = Thread.currentThread();
+			attached.remove(current);
+			removeWaiting(current);
+
+			if (running == current)
+				dispatch();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Blocks a thread until it is the running device.
+	 * Threads which were not started by this clock are attached on first use.
+	 */
+	private void acquire() throws InterruptedException {
+		Thread current = Thread.currentThread();
+
+		if (attached.add(current))
+			schedule(now, current);
+
+		if (running == null)
+			dispatch();
+
+		if (running != current)
+			park();
+	}
+
+	private Wakeup schedule(long time, Thread thread) {
+		Wakeup wakeup = new Wakeup(time, sequence++, thread);
+		events.add(wakeup);
+		return wakeup;
+	}
+
+	/*
+	 * Schedules waiting devices to re-test their conditions now.
+	 */
+	private void wake(ArrayList<Waiter> waiting) {
+		for (Waiter waiter : waiting) {
+			if (waiter.timeout != null)
+				waiter.timeout.cancelled = true;
+			schedule(now, waiter.thread);
+		}
+	}
+
+	/*
+	 * Hands the clock to the next event and blocks until this thread is dispatched again.
+	 * The lock is released while parked.
+	 */
+	private void park() throws InterruptedException {
+		Thread current = Thread.currentThread();
+
+		if (running == current)
+			dispatch();
+
+		boolean interrupted = false;
+		lock.unlock();
+		try {
+			while (running != current) {
+				LockSupport.park(this);
+
+				// Keep the one-device-at-a-time invariant: come back at the current time.
+				if (Thread.interrupted() && !interrupted) {
+					interrupted = true;
+					lock.lock();
+					try {
+						removeWaiting(current);
+						for (Wakeup wakeup : events)
+							if (wakeup.thread == current)
+								wakeup.cancelled = true;
+						schedule(now, current);
+						if (running == null)
+							dispatch();
+					} finally {
+						lock.unlock();
+					}
+				}
+			}
+		} finally {
+			lock.lock();
+		}
+
+		if (interrupted)
+			throw new InterruptedException();
+	}
+
+	private void removeWaiting(Thread thread) {
+		Waiter waiter = waiters.remove(thread);
+		if (waiter != null) {
+			ArrayList<Waiter> waiting = channels.get(waiter.channel);
+			waiting.remove(waiter);
+			if (waiting.isEmpty())
+				channels.remove(waiter.channel);
+			if (waiter.timeout != null)
+				waiter.timeout.cancelled = true;
+		}
+	}
+
+	/*
+	 * Advances the clock to the earliest pending event and lets its thread run.
+	 * If nothing is pending the simulation stays idle until the next signal().
+	 */
+	private void dispatch() {
+		running = null;
+
+		// Skip cancelled wake-ups and threads which have finished without detaching.
+		Wakeup next = events.poll();
+		while (next != null && (next.cancelled || !next.thread.isAlive()))
+			next = events.poll();
+
+		if (next != null) {
+			now = Math.max(now, next.time);
+			running = next.thread;
+			LockSupport.unpark(next.thread);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package physical_network;
+
+/**
+ * Notified by a wire each time the voltage across it changes.
+ * <p>
+ * Called on the thread of the device which set the voltage, so implementations
+ * must be quick and must not block.
+ */
+public interface VoltageListener {
+
+    /**
+     * @param previous Voltage across the wire before the change.
+     * @param current  Voltage across the wire after the change.
+     */
+    public void voltageChanged(double previous, double current);
+
+}
@@ -0,0 +1,38 @@
+package physical_network;
+
+/**
+ * A device's connection to a twisted wire pair.
+ * <p>
+ * Devices which set or test the voltage often should hold on to a connection
+ * rather than being looked up by name on every call. This default connection
+ * simply passes its device name through to the wire; wire implementations
+ * may return a faster one from TwistedWirePair.connect().
+ */
+public class WireConnection {
+
+	private final TwistedWirePair wire;
+	private final String device;
+
+	public WireConnection(TwistedWirePair wire, String device) {
+		this.wire = wire;
+		this.device = device;
+	}
+
+	public String getDevice() {
+		return device;
+	}
+
+	/**
+	 * @param voltage Voltage this device sets across the wires.
+	 */
+	public void setVoltage(double voltage) {
+		wire.setVoltage(device, voltage);
+	}
+
+	/**
+	 * @return Voltage across the wire pair where this device connects.
+	 */
+	public double getVoltage() {
+		return wire.getVoltage(device);
+	}
+}
@@ -0,0 +1,114 @@
+package physical_network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records every voltage change on a wire into a binary trace file so that a
+ * run can be replayed later with ReplayTwistedWirePair.
+ * <p>
+ * The file is written through memory mapped regions so recording costs little
+ * more than a memory copy. It holds a header followed by records:
+ * <pre>
+ *   header:  int MAGIC, short VERSION
+ *   device:  long time, int -(slot + 1), short name length, name bytes (UTF-8)
+ *   voltage: long time, int slot, double device voltage, double wire voltage
+ * </pre>
+ * Times are simulation milliseconds. Attach a recorder with
+ * MyTwistedWirePair.setTraceRecorder() and close it at the end of the run.
+ */
+public class WireTraceRecorder implements Closeable {
+
+	static final int MAGIC = 0x57545243; // "WTRC"
+	static final short VERSION = 1;
+
+	static final int VOLTAGE_RECORD_SIZE = 8 + 4 + 8 + 8;
+
+	// Size of each mapped region of the file.
+	private static final int REGION_SIZE = 16 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final SimulationClock clock;
+
+	private MappedByteBuffer region;
+	private long regionStart = 0;
+
+	/**
+	 * @param file  Trace file to create (replaced if it exists).
+	 * @param clock Clock used to time stamp the records.
+	 */
+	public WireTraceRecorder(Path file, SimulationClock clock) throws IOException {
+		this.clock = clock;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+		region.putInt(MAGIC);
+		region.putShort(VERSION);
+	}
+
+	/*
+	 * Records that a device has been given a slot on the wire.
+	 */
+	synchronized void deviceConnected(int slot, String device) {
+		byte[] name = device.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer out = reserve(8 + 4 + 2 + name.length);
+		out.putLong(clock.now());
+		out.putInt(-(slot + 1));
+		out.putShort((short) name.length);
+		out.put(name);
+	}
+
+	/*
+	 * Records a device setting its voltage and the resulting voltage across the wire.
+	 * Wires change their voltage and record it while holding the recorder's lock,
+	 * so records are appended in time order.
+	 */
+	synchronized void voltageSet(int slot, double voltage, double wireVoltage) {
+		ByteBuffer out = reserve(VOLTAGE_RECORD_SIZE);
+		out.putLong(clock.now());
+		out.putInt(slot);
+		out.putDouble(voltage);
+		out.putDouble(wireVoltage);
+	}
+
+	/*
+	 * Maps the next region of the file if the current one cannot hold a record.
+	 */
+	private ByteBuffer reserve(int size) {
+		if (region == null)
+			throw new IllegalStateException("Trace recorder is closed");
+
+		if (region.remaining() < size) {
+			try {
+				regionStart += region.position();
+				region.force();
+				region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_SIZE, size));
+			} catch (IOException except) {
+				throw new IllegalStateException("Unable to extend wire trace", except);
+			}
+		}
+		return region;
+	}
+
+	/**
+	 * Flushes the trace and trims the file to the recorded length.
+	 */
+	public synchronized void close() throws IOException {
+		if (region == null)
+			return;
+
+		long length = regionStart + region.position();
+		region.force();
+		region = null;
+
+		channel.truncate(length);
+		channel.close();
+	}
+}
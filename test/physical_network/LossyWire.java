@@ -0,0 +1,48 @@
+package physical_network;
+
+/**
+ * Wire on which, while it is lossy, one device cannot hear the end of
+ * another's long frames. A card drives the wire for the whole of a frame
+ * and sets it to zero after it, so a frame runs from the first voltage set
+ * after a zero to the next zero.
+ */
+class LossyWire implements TwistedWirePair {
+
+	// Time after which a frame counts as long: 30 bytes of 13 pulses.
+	private static final long LONG_FRAME = 30 * 13 * 200;
+
+	private final TwistedWirePair wire = new MyTwistedWirePair();
+	private final SimulationClock clock;
+	private final String speaker;
+	private final String listener;
+
+	private volatile double speakerVoltage;
+	private volatile long frameStart;
+	private volatile boolean lossy;
+
+	LossyWire(SimulationClock clock, String speaker, String listener) {
+		this.clock = clock;
+		this.speaker = speaker;
+		this.listener = listener;
+	}
+
+	void setLossy(boolean lossy) {
+		this.lossy = lossy;
+	}
+
+	public void setVoltage(String device, double voltage) {
+		if (device.equals(speaker)) {
+			if (speakerVoltage == 0 && voltage != 0)
+				frameStart = clock.now();
+			speakerVoltage = voltage;
+		}
+		wire.setVoltage(device, voltage);
+	}
+
+	public double getVoltage(String device) {
+		double voltage = wire.getVoltage(device);
+		boolean hidden = lossy && device.equals(listener) && speakerVoltage != 0
+				&& clock.now() - frameStart > LONG_FRAME;
+		return hidden ? voltage - speakerVoltage : voltage;
+	}
+}
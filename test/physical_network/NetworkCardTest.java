@@ -0,0 +1,237 @@
+package physical_network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+/**
+ * Sends frames between network cards on a VirtualClock, so each test runs
+ * the same way every time. Cards are shut down at the end of each test, as
+ * they would otherwise go on listening to the wire.
+ */
+public class NetworkCardTest {
+
+	// Simulated time allowed for a frame to be delivered or given up on.
+	private static final long DEADLINE = 4000000;
+
+	// Payload of a frame which takes more than twice as long to send as a short one.
+	private static final String LONG_PAYLOAD = "A payload long enough to be lost";
+
+	@Test
+	public void corruptedAckDoesNotAdvanceWindow() throws Exception {
+		VirtualClock clock = new VirtualClock();
+		CorruptingWire wire = new CorruptingWire(clock, "NetCard2", "NetCard1");
+
+		NetworkCard sender = new NetworkCard(1, wire, clock);
+		NetworkCard receiver = new NetworkCard(2, wire, clock);
+		sender.setArq(ArqMode.GO_BACK_N, 4);
+		receiver.setArq(ArqMode.GO_BACK_N, 4);
+		sender.init();
+		receiver.init();
+
+		clock.attach();
+		try {
+			CompletableFuture<DeliveryReceipt> receipt = sender.sendAsync(new DataFrame("Hello", 2));
+
+			// Just after the corrupted acknowledgement has arrived the frame is still outstanding.
+			while (!wire.corrupted())
+				clock.sleep(1000);
+			assertFalse(receipt.isDone());
+			assertEquals(1, sender.getMetrics().getChecksumFailures());
+			assertEquals(0, sender.getMetrics().getAcksReceived());
+
+			// It is sent again and the next acknowledgement gets through.
+			awaitDone(clock, receipt);
+			assertTrue(receipt.get().isDelivered());
+			assertTrue(receipt.get().getTransmissions() > 1);
+			assertEquals("Hello", receiver.receive().toString());
+		} finally {
+			sender.shutdown();
+			receiver.shutdown();
+			clock.detach();
+		}
+	}
+
+	@Test
+	public void givingUpOnFrameLeavesTransmitterRunning() throws Exception {
+		VirtualClock clock = new VirtualClock();
+		TwistedWirePair wire = new MyTwistedWirePair();
+
+		NetworkCard sender = new NetworkCard(1, wire, clock);
+		NetworkCard receiver = new NetworkCard(2, wire, clock);
+		sender.setInitialTimeout(1000);
+		sender.init();
+		receiver.init();
+
+		clock.attach();
+		try {
+			// No card answers to device 9.
+			CompletableFuture<DeliveryReceipt> lost = sender.sendAsync(new DataFrame("Lost", 9));
+			awaitDone(clock, lost);
+			assertFalse(lost.get().isDelivered());
+			assertEquals(1, sender.getMetrics().getFramesGivenUp());
+
+			CompletableFuture<DeliveryReceipt> later = sender.sendAsync(new DataFrame("Later", 2));
+			awaitDone(clock, later);
+			assertTrue(later.get().isDelivered());
+			assertEquals("Later", receiver.receive().toString());
+		} finally {
+			sender.shutdown();
+			receiver.shutdown();
+			clock.detach();
+		}
+	}
+
+	@Test
+	public void receiverSkipsFramesGivenUpOn() throws Exception {
+		for (ArqMode mode : ArqMode.values()) {
+			VirtualClock clock = new VirtualClock();
+			LossyWire wire = new LossyWire(clock, "NetCard1", "NetCard2");
+
+			NetworkCard sender = new NetworkCard(1, wire, clock);
+			NetworkCard receiver = new NetworkCard(2, wire, clock);
+			sender.setArq(mode, 4);
+			receiver.setArq(mode, 4);
+			sender.setInitialTimeout(1000);
+			sender.init();
+			receiver.init();
+
+			clock.attach();
+			try {
+				// The receiver never gets the long first frame, so the sender gives up on it.
+				// The short frames sent with it arrive after the gap. Selective Repeat
+				// acknowledges and holds them. Go-Back-N sends them again with the first
+				// frame, so it may give up on them too.
+				wire.setLossy(true);
+				CompletableFuture<DeliveryReceipt> lost = sender.sendAsync(new DataFrame(LONG_PAYLOAD, 2));
+				CompletableFuture<DeliveryReceipt> second = sender.sendAsync(new DataFrame("Second", 2));
+				CompletableFuture<DeliveryReceipt> third = sender.sendAsync(new DataFrame("Third", 2));
+				awaitDone(clock, lost);
+				assertFalse(mode.toString(), lost.get().isDelivered());
+				wire.setLossy(false);
+
+				CompletableFuture<DeliveryReceipt> last = sender.sendAsync(new DataFrame("Last", 2));
+				awaitDone(clock, last);
+				assertTrue(mode.toString(), last.get().isDelivered());
+				if (mode == ArqMode.SELECTIVE_REPEAT)
+					assertTrue(second.get().isDelivered() && third.get().isDelivered());
+
+				// Exactly the frames reported delivered are received, in order.
+				List<String> payloads = List.of("Second", "Third", "Last");
+				List<CompletableFuture<DeliveryReceipt>> receipts = List.of(second, third, last);
+				int delivered = 0;
+				for (int i = 0; i < receipts.size(); i++) {
+					if (receipts.get(i).get().isDelivered()) {
+						assertEquals(mode.toString(), payloads.get(i), receiver.receive().toString());
+						delivered++;
+					}
+				}
+				assertEquals(mode.toString(), delivered, receiver.getMetrics().getFramesDelivered());
+			} finally {
+				sender.shutdown();
+				receiver.shutdown();
+				clock.detach();
+			}
+		}
+	}
+
+	@Test
+	public void cardsNumberedAbove127ExchangeFrames() throws Exception {
+		VirtualClock clock = new VirtualClock();
+		TwistedWirePair wire = new MyTwistedWirePair();
+
+		NetworkCard first = new NetworkCard(200, wire, clock);
+		NetworkCard second = new NetworkCard(130, wire, clock);
+		first.init();
+		second.init();
+
+		clock.attach();
+		try {
+			CompletableFuture<DeliveryReceipt> there = first.sendAsync(new DataFrame("There", 130));
+			awaitDone(clock, there);
+			assertTrue(there.get().isDelivered());
+			DataFrame received = second.receive();
+			assertEquals("There", received.toString());
+			assertEquals(200, received.getSource());
+
+			CompletableFuture<DeliveryReceipt> back = second.sendAsync(new DataFrame("Back", 200));
+			awaitDone(clock, back);
+			assertTrue(back.get().isDelivered());
+			received = first.receive();
+			assertEquals("Back", received.toString());
+			assertEquals(130, received.getSource());
+		} finally {
+			first.shutdown();
+			second.shutdown();
+			clock.detach();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void deviceNumberMustFitInAByte() {
+		new NetworkCard(256, new MyTwistedWirePair(), new VirtualClock());
+	}
+
+	private static void awaitDone(VirtualClock clock, CompletableFuture<?> future) throws InterruptedException {
+		long deadline = clock.now() + DEADLINE;
+		while (!future.isDone() && clock.now() < deadline)
+			clock.sleep(1000);
+		assertTrue("Not done by " + deadline, future.isDone());
+	}
+
+	/*
+	 * Wire which inverts the low byte of the frame number in the first frame
+	 * a device sends, as another device sees it. Cards send asynchronously by
+	 * default: each byte is four low lead-in pulses, a high start pulse and
+	 * eight data pulses, so the first high voltage is the start pulse of the
+	 * frame's first byte. An acknowledgement is a header of seven bytes and a flag.
+	 */
+	private static class CorruptingWire implements TwistedWirePair {
+
+		private static final int PULSE_WIDTH = 200;
+		private static final int BYTE_TIME = 13 * PULSE_WIDTH;
+		private static final int CORRUPTED_BYTE = 3;
+		private static final int FRAME_BYTES = 8;
+
+		private final TwistedWirePair wire = new MyTwistedWirePair();
+		private final SimulationClock clock;
+		private final String sender;
+		private final String victim;
+
+		private volatile long frameStart = -1;
+
+		CorruptingWire(SimulationClock clock, String sender, String victim) {
+			this.clock = clock;
+			this.sender = sender;
+			this.victim = victim;
+		}
+
+		public void setVoltage(String device, double voltage) {
+			if (frameStart < 0 && device.equals(sender) && voltage > 0)
+				frameStart = clock.now();
+			wire.setVoltage(device, voltage);
+		}
+
+		public double getVoltage(String device) {
+			double voltage = wire.getVoltage(device);
+			if (!device.equals(victim) || frameStart < 0)
+				return voltage;
+
+			long start = frameStart + CORRUPTED_BYTE * BYTE_TIME + PULSE_WIDTH;
+			long now = clock.now();
+			return (now >= start && now < start + 8 * PULSE_WIDTH) ? -voltage : voltage;
+		}
+
+		/*
+		 * Whether the corrupted frame has been received in full.
+		 */
+		boolean corrupted() {
+			return frameStart >= 0 && clock.now() > frameStart + (FRAME_BYTES + 1) * BYTE_TIME;
+		}
+	}
+}
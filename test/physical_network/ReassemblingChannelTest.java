@@ -0,0 +1,164 @@
+package physical_network;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+/**
+ * Streams bytes between network cards on a VirtualClock through segmenting
+ * and reassembling channels.
+ */
+public class ReassemblingChannelTest {
+
+	// Simulated time allowed for every stream to be read.
+	private static final long DEADLINE = 10000000;
+
+	private static final int LENGTH = 100;
+	private static final int SEGMENT_SIZE = 16;
+
+	// Segment long enough for a LossyWire to lose its frame.
+	private static final int LONG_SEGMENT = 40;
+
+	@Test
+	public void streamsFromConcurrentSendersAreKeptApart() throws Exception {
+		VirtualClock clock = new VirtualClock();
+		TwistedWirePair wire = new MyTwistedWirePair();
+
+		NetworkCard[] senders = {new NetworkCard(1, wire, clock), new NetworkCard(2, wire, clock)};
+		NetworkCard receiver = new NetworkCard(3, wire, clock);
+		for (NetworkCard sender : senders)
+			sender.init();
+		receiver.init();
+
+		clock.attach();
+		try {
+			// Both senders write at once, so their frames reach the receiver interleaved.
+			List<CompletableFuture<byte[]>> streams = new ArrayList<CompletableFuture<byte[]>>();
+			for (int i = 0; i < senders.length; i++) {
+				int source = i + 1;
+				SegmentingChannel output = senders[i].openOutputChannel(3, SEGMENT_SIZE);
+				clock.start(Thread.ofVirtual().unstarted(
+						() -> write(clock, output, new CompletableFuture<Void>(), stream(source))));
+
+				ReassemblingChannel input = receiver.openInputChannel(source);
+				CompletableFuture<byte[]> stream = new CompletableFuture<byte[]>();
+				streams.add(stream);
+				clock.start(Thread.ofVirtual().unstarted(() -> read(clock, input, stream)));
+			}
+
+			awaitDone(clock, CompletableFuture.allOf(streams.toArray(new CompletableFuture<?>[0])));
+			for (int i = 0; i < senders.length; i++)
+				assertArrayEquals(stream(i + 1), streams.get(i).get());
+		} finally {
+			for (NetworkCard sender : senders)
+				sender.shutdown();
+			receiver.shutdown();
+			clock.detach();
+		}
+	}
+
+	@Test
+	public void segmentGivenUpOnFailsBothEnds() throws Exception {
+		VirtualClock clock = new VirtualClock();
+		LossyWire wire = new LossyWire(clock, "NetCard1", "NetCard2");
+
+		NetworkCard sender = new NetworkCard(1, wire, clock);
+		NetworkCard receiver = new NetworkCard(2, wire, clock);
+		sender.setArq(ArqMode.SELECTIVE_REPEAT, 4);
+		receiver.setArq(ArqMode.SELECTIVE_REPEAT, 4);
+		sender.setInitialTimeout(1000);
+		sender.init();
+		receiver.init();
+
+		clock.attach();
+		try {
+			// A short segment, a long one which is lost, then a short last segment.
+			wire.setLossy(true);
+			SegmentingChannel output = sender.openOutputChannel(2, LONG_SEGMENT);
+			CompletableFuture<Void> written = new CompletableFuture<Void>();
+			clock.start(Thread.ofVirtual().unstarted(() -> write(clock, output, written, "Before".getBytes(),
+					new byte[LONG_SEGMENT], "After".getBytes())));
+
+			ReassemblingChannel input = receiver.openInputChannel(1);
+			CompletableFuture<byte[]> read = new CompletableFuture<byte[]>();
+			clock.start(Thread.ofVirtual().unstarted(() -> read(clock, input, read)));
+
+			awaitDone(clock, written);
+			assertTrue(written.isCompletedExceptionally());
+			wire.setLossy(false);
+
+			// The next frame tells the receiver to stop waiting for the lost segment,
+			// so the last segment reaches the reader after a gap.
+			sender.send(new DataFrame("Next", 2));
+			awaitDone(clock, read);
+			assertTrue(read.isCompletedExceptionally());
+		} finally {
+			sender.shutdown();
+			receiver.shutdown();
+			clock.detach();
+		}
+	}
+
+	private static void awaitDone(VirtualClock clock, CompletableFuture<?> future) throws InterruptedException {
+		long deadline = clock.now() + DEADLINE;
+		while (!future.isDone() && clock.now() < deadline)
+			clock.sleep(1000);
+		assertTrue("Not done by " + deadline, future.isDone());
+	}
+
+	/*
+	 * Bytes a device sends, different for each device.
+	 */
+	private static byte[] stream(int source) {
+		byte[] bytes = new byte[LENGTH];
+		for (int i = 0; i < LENGTH; i++)
+			bytes[i] = (byte) (i * 7 + source * 101);
+		return bytes;
+	}
+
+	/*
+	 * Writes each block of bytes and flushes it, then closes the channel.
+	 */
+	private static void write(VirtualClock clock, SegmentingChannel channel, CompletableFuture<Void> written,
+			byte[]... blocks) {
+		try {
+			clock.attach();
+			for (byte[] block : blocks) {
+				channel.write(ByteBuffer.wrap(block));
+				channel.flush();
+			}
+			channel.close();
+			written.complete(null);
+		} catch (InterruptedException | IOException except) {
+			written.completeExceptionally(except);
+		} finally {
+			clock.detach();
+		}
+	}
+
+	private static void read(VirtualClock clock, ReassemblingChannel channel, CompletableFuture<byte[]> stream) {
+		try {
+			clock.attach();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ByteBuffer buffer = ByteBuffer.allocate(SEGMENT_SIZE * 3);
+			while (channel.read(buffer) >= 0) {
+				bytes.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			channel.close();
+			stream.complete(bytes.toByteArray());
+		} catch (InterruptedException | IOException except) {
+			stream.completeExceptionally(except);
+		} finally {
+			clock.detach();
+		}
+	}
+}